@@ -25,14 +25,30 @@
  */
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @brief Hexadecimal Sudoku.
@@ -104,15 +120,289 @@ public class SudokuHex
 		}
 	}
 	
-	private final int GRID_SIZE = 16;
-	private final int NUM_PEERS = 39;
-	private final int NUM_UNITS = 3;
+	private static final int GRID_SIZE = 16;
+	private static final int NUM_SQUARES = 256;
+	private static final int NUM_PEERS = 39;
+	private static final int NUM_UNITS = 3;
+	private static final int NUM_ALL_UNITS = 48; /**< Number of units of the grid (16 rows, 16 columns and 16 boxes). */
+	private static final int MAX_SUBSET = 4; /**< Largest naked or hidden subset looked for (quads), and largest fish (jellyfish). */
+	private static final int NUM_INTERSECTIONS = 128; /**< Number of intersections between a box and a line (each box crosses 4 rows and 4 columns). */
+	private static final int NUM_SUBPROBLEMS = 1024; /**< Minimum number of subproblems of the parallel counting. It doesn't depend on the number of workers, so that a checkpoint can be resumed with any number of them. */
+	protected static final int SEARCH_FAILED = 0; /**< The search space was exhausted without finding a solution. */
+	protected static final int SEARCH_SOLVED = 1; /**< The search found a solution, values hold it. */
+	protected static final int SEARCH_PAUSED = 2; /**< The search ran out of nodes, it can be resumed later. */
+	private final int NUM_WORDS = 64; /**< Number of longs needed to pack the 256 squares (4 squares of 16 bits per long). */
+	private final int ALL_VALUES = 0xFFFF; /**< Mask of a free square, every value (0-F) is possible. */
+	private final String SYMBOLS = "0123456789ABCDEF"; /**< Symbol of each value, the value is the index of its symbol. */
+	private final long LANES = 0x0001000100010001L; /**< Lowest bit of each of the 4 squares packed in a long. */
+	
+	/**
+	 * @brief Units and peers of every square of the grid.
+	 * They are the same for every sudoku, so they are built only once per JVM and shared by every solver.
+	 * The tables are never modified after construction, hence they can be read concurrently by several threads.
+	 * Squares are indexed in row-major order (16*row + column). Units are indexed 0-15 for the rows,
+	 * 16-31 for the columns and 32-47 for the boxes.
+	 */
+	private static final class Topology
+	{
+		private final short[] peers; /**< 39 peers of each square, the peers of a square s are peers[39*s] to peers[39*s + 38]. */
+		private final short[] unitSquares; /**< 16 squares of each unit, the squares of a unit u are unitSquares[16*u] to unitSquares[16*u + 15]. */
+		private final byte[] squareUnits; /**< 3 units of each square (row, column and box), the units of a square s are squareUnits[3*s] to squareUnits[3*s + 2]. */
+		private final byte[] squarePositions; /**< Position (0-15) of each square inside each of its 3 units, squarePositions[3*s + k] is the position of s in the unit squareUnits[3*s + k]. */
+		private final byte[] row; /**< Row of each square. */
+		private final byte[] column; /**< Column of each square. */
+		private final byte[] box; /**< Box of each square (0-15, in row-major order). */
+		private final byte[] intersectionUnits; /**< Box and line (row or column) of each intersection, intersectionUnits[2*i] is the box unit and intersectionUnits[2*i + 1] the line unit. */
+		private final short[] intersectionMasks; /**< Positions of each intersection in its units, intersectionMasks[2*i] in the box and intersectionMasks[2*i + 1] in the line. */
+		
+		/**
+		 * Constructor. Fills every table of the topology.
+		 */
+		private Topology()
+		{
+			peers = new short[NUM_SQUARES*NUM_PEERS];
+			unitSquares = new short[NUM_ALL_UNITS*GRID_SIZE];
+			squareUnits = new byte[NUM_SQUARES*NUM_UNITS];
+			squarePositions = new byte[NUM_SQUARES*NUM_UNITS];
+			row = new byte[NUM_SQUARES];
+			column = new byte[NUM_SQUARES];
+			box = new byte[NUM_SQUARES];
+			intersectionUnits = new byte[NUM_INTERSECTIONS*2];
+			intersectionMasks = new short[NUM_INTERSECTIONS*2];
+			
+			for(int r=0; r<GRID_SIZE; ++r)
+			{
+				for(int c=0; c<GRID_SIZE; ++c)
+				{
+					// For each square...
+					int square = GRID_SIZE*r + c;
+					int superRow = r/4;
+					int superColumn = c/4;
+					int b = 4*superRow + superColumn;
+					row[square] = (byte)r;
+					column[square] = (byte)c;
+					box[square] = (byte)b;
+					
+					// Initialize units
+					squareUnits[NUM_UNITS*square] = (byte)r;
+					squareUnits[NUM_UNITS*square + 1] = (byte)(GRID_SIZE + c);
+					squareUnits[NUM_UNITS*square + 2] = (byte)(2*GRID_SIZE + b);
+					unitSquares[GRID_SIZE*r + c] = (short)square;
+					unitSquares[GRID_SIZE*(GRID_SIZE + c) + r] = (short)square;
+					unitSquares[GRID_SIZE*(2*GRID_SIZE + b) + 4*(r%4) + c%4] = (short)square;
+					squarePositions[NUM_UNITS*square] = (byte)c;
+					squarePositions[NUM_UNITS*square + 1] = (byte)r;
+					squarePositions[NUM_UNITS*square + 2] = (byte)(4*(r%4) + c%4);
+					
+					// Initialize peers
+					// (Same as the units, but without duplicates, and without the square [r,c])
+					int peer = NUM_PEERS*square;
+					for(int k=0; k<GRID_SIZE; ++k)
+					{
+						// Add the row
+						if(k!=c)
+						{
+							peers[peer++] = (short)(GRID_SIZE*r + k);
+						}
+						// Add the column
+						if(k!=r)
+						{
+							peers[peer++] = (short)(GRID_SIZE*k + c);
+						}
+						// Add the box
+						int boxRow = 4*superRow + k/4;
+						int boxColumn = 4*superColumn + k%4;
+						if( (boxRow != r) && (boxColumn != c) )
+						{
+							peers[peer++] = (short)(GRID_SIZE*boxRow + boxColumn);
+						}
+					}
+				}
+			}
+			
+			// Initialize intersections
+			// The k-th row of a box is at the positions 4k to 4k+3 of the box, and the k-th column at the
+			// positions k, k+4, k+8 and k+12. The box is at 4 consecutive positions of the line.
+			int intersection = 0;
+			for(int b=0; b<GRID_SIZE; ++b)
+			{
+				for(int k=0; k<4; ++k)
+				{
+					int r = 4*(b/4) + k;
+					intersectionUnits[2*intersection] = (byte)(2*GRID_SIZE + b);
+					intersectionUnits[2*intersection + 1] = (byte)r;
+					intersectionMasks[2*intersection] = (short)(0xF << (4*k));
+					intersectionMasks[2*intersection + 1] = (short)(0xF << (4*(b%4)));
+					++intersection;
+					
+					int c = 4*(b%4) + k;
+					intersectionUnits[2*intersection] = (byte)(2*GRID_SIZE + b);
+					intersectionUnits[2*intersection + 1] = (byte)(GRID_SIZE + c);
+					intersectionMasks[2*intersection] = (short)(0x1111 << k);
+					intersectionMasks[2*intersection + 1] = (short)(0xF << (4*(b/4)));
+					++intersection;
+				}
+			}
+		}
+	}
+	
+	private static final Topology TOPOLOGY = new Topology(); /**< Topology shared by every solver. */
+	
+	/**
+	 * @brief Configuration of the heuristics and engine paths used by a solver.
+	 * The default configuration is the one of the final version. A strategy is read by the solver but never
+	 * modified, so the same one can be shared by several solvers.
+	 */
+	public static class Strategy
+	{
+		public String name = "default"; /**< Name of the configuration, used in the reports. */
+		public boolean vectorized = true; /**< Use the SWAR (SIMD within a register) path, that works with the 4 squares packed in each long at once, instead of square by square. */
+		public boolean lcv = true; /**< Order the values of the chosen square with the LCV heuristic (version 2.3), otherwise they are tried in increasing order (version 2.2). */
+		public boolean consistencyCheck = false; /**< Check the M>N AllDiff consistency of the units changed by each elimination (version 2.4 heuristic). */
+		public boolean lockedCandidates = false; /**< Box/line interactions: a value whose places in a box (or line) are all in their intersection can't be in the rest of the line (or box). */
+		public int nakedSubsets = 0; /**< Largest naked subset (pairs 2, triples 3, quads 4) looked for in each unit, 0 disables the rule. */
+		public int hiddenSubsets = 0; /**< Largest hidden subset (pairs 2, triples 3, quads 4) looked for in each unit, 0 disables the rule. */
+		public int fish = 0; /**< Largest fish looked for on the rows and columns of each value (X-Wing 2, Swordfish 3, Jellyfish 4), 0 disables the rule. */
+		public boolean allDiffFiltering = false; /**< Generalized arc consistency of the AllDiff constraint of each unit (Regin's filtering with bipartite matching and strongly connected components). */
+		public int probeDepth = 0; /**< Number of search levels (from the root) where the candidates are probed (failed literals and values implied by every candidate), 0 disables the probing. */
+		public int probeSquares = 8; /**< Number of squares probed at each probing pass, the ones with fewer possible values. */
+		public ForkJoinPool probePool = null; /**< Pool where the probes of the different squares run in parallel, null to probe them in the solver's thread. */
+		public boolean backjumping = false; /**< Conflict-directed backjumping: the decisions that caused each contradiction are tracked, and the search goes back straight to the most recent one. */
+		public boolean weightedDegree = false; /**< Dom/wdeg square ordering: the square chosen is the one with the smallest ratio between its number of possible values and the weights of its units, that grow with the contradictions found in them. */
+		public boolean restarts = false; /**< Randomized restarts: the ties of the square and value orderings are broken at random, and the search starts again from the root when a run uses up its node budget (restartBase times the Luby sequence). */
+		public long restartBase = 100; /**< Node budget of the shortest runs of the restarts. */
+		public long seed = 1; /**< Seed of the random tie-breaking, the same seed gives the same search. */
+		public long searchSlice = 256; /**< Nodes searched by a task of the parallel search between its checks for a solution (found by another task) and for idle workers to share its branches with. */
+		
+		/**
+		 * @brief Returns a copy of the strategy, to be modified without affecting the original.
+		 * @return Copy of the strategy.
+		 */
+		public Strategy copy()
+		{
+			Strategy copy = new Strategy();
+			copy.name = name;
+			copy.vectorized = vectorized;
+			copy.lcv = lcv;
+			copy.consistencyCheck = consistencyCheck;
+			copy.lockedCandidates = lockedCandidates;
+			copy.nakedSubsets = nakedSubsets;
+			copy.hiddenSubsets = hiddenSubsets;
+			copy.fish = fish;
+			copy.allDiffFiltering = allDiffFiltering;
+			copy.probeDepth = probeDepth;
+			copy.probeSquares = probeSquares;
+			copy.probePool = probePool;
+			copy.backjumping = backjumping;
+			copy.weightedDegree = weightedDegree;
+			copy.restarts = restarts;
+			copy.restartBase = restartBase;
+			copy.seed = seed;
+			copy.searchSlice = searchSlice;
+			return copy;
+		}
+		
+		/**
+		 * @brief Returns the strategies of the default portfolio, the ones of the different versions and an adaptive one.
+		 * Each one wins on different sudokus, racing them cuts the worst cases.
+		 * @return Strategies of the portfolio.
+		 */
+		public static Strategy[] portfolio()
+		{
+			Strategy v22 = new Strategy();
+			v22.name = "v2.2 (MRV)";
+			v22.lcv = false;
+			Strategy v23 = new Strategy();
+			v23.name = "v2.3 (MRV + LCV)";
+			Strategy v24 = new Strategy();
+			v24.name = "v2.4 (MRV + LCV + consistency check)";
+			v24.consistencyCheck = true;
+			Strategy adaptive = new Strategy();
+			adaptive.name = "dom/wdeg + restarts + locked candidates";
+			adaptive.weightedDegree = true;
+			adaptive.restarts = true;
+			adaptive.lockedCandidates = true;
+			return new Strategy[] {v22, v23, v24, adaptive};
+		}
+	}
+	
+	private final Strategy strategy; /**< Heuristics and engine paths used by this solver. */
 	private String template; /**< Text template that represents a hexadecimal sudoku grid (0-F for values set values, and . or - for free squares. It can also contain carriage returns, tabulations or whitespaces to increase readability). */
 	// STATIC DICTIONARIES
-	private int[][][][][] units; /**< Dictionary of units, each square has 3 units (row, column, and box) with 16 squares  */
-	private int[][][][] peers; /**< Dictionary of peers, each square has 39 peers. A square's peers are the result of the union of the square's units, removing duplicates and removing itself. */
+	private final short[] peers = TOPOLOGY.peers; /**< Dictionary of peers, each square has 39 peers. A square's peers are the result of the union of the square's units, removing duplicates and removing itself. */
+	private final short[] unitSquares = TOPOLOGY.unitSquares; /**< Dictionary of units, each unit (row, column, or box) has 16 squares. */
+	private final byte[] squareUnits = TOPOLOGY.squareUnits; /**< Units of each square, each square has 3 units (row, column, and box). */
+	private final byte[] squarePositions = TOPOLOGY.squarePositions; /**< Position of each square inside each of its units. */
+	private final byte[] intersectionUnits = TOPOLOGY.intersectionUnits; /**< Box and line of each box/line intersection. */
+	private final short[] intersectionMasks = TOPOLOGY.intersectionMasks; /**< Positions of each box/line intersection in its box and in its line. */
+	private final byte[] row = TOPOLOGY.row; /**< Row of each square. */
+	private final byte[] column = TOPOLOGY.column; /**< Column of each square. */
 	// DYNAMIC DICTIONARY
-	private String[][] values; /**< Dictionary of values. Each character of the string represents a possible value. This is the only data structure that is copied in each search recursive call. */
+	private long[] values; /**< Dictionary of values. Each square is a 16 bit mask (bit v is set if v is a possible value), packed 4 squares per long in row-major order. The search modifies it in place, the trail is used to restore it when backtracking. */
+	private final int[] unitPositions = new int[NUM_ALL_UNITS*GRID_SIZE]; /**< Dual dictionary of values. For each unit u and value v, unitPositions[16*u + v] is a 16 bit mask of the positions of the unit where v is still possible. */
+	private final long[] digitBoards = new long[GRID_SIZE*4]; /**< Bitboard of each value, a set of 256 bits (digitBoards[4*v] to digitBoards[4*v + 3]) with the squares where v is possible. Each long has 4 rows, 16 bits each. */
+	private final long[] buckets = new long[(GRID_SIZE+1)*4]; /**< Squares grouped by their number of possible values. Bucket k is a set of 256 bits (buckets[4*k] to buckets[4*k + 3]) with the squares that have k possible values. */
+	// UNDO TRAIL
+	private final int[] trail = new int[NUM_SQUARES*GRID_SIZE]; /**< Undo stack of the changes made to values. Each entry is (square << 16 | previous mask). A square can only lose 15 values along a branch, so it never overflows. */
+	private int trailSize; /**< Number of entries in the trail. A search node saves it as its mark, and undoes the changes above the mark when backtracking. */
+	// PROPAGATION QUEUE
+	private final int[] queue = new int[NUM_SQUARES*GRID_SIZE]; /**< Pending eliminations to propagate. Each entry is (square << 5 | single << 4 | value), single is set if the square was left with only one value. A value is eliminated from a square only once, so it never overflows. */
+	private int queueHead; /**< Next entry of the queue to propagate. */
+	private int queueTail; /**< Number of entries in the queue. */
+	private long dirtyUnits; /**< Set of units (bit u for unit u) with squares changed since their last consistency check. */
+	private long lockedUnits; /**< Set of units with squares changed since the last locked candidates fixpoint. */
+	private long subsetUnits; /**< Set of units with squares changed since the last subsets fixpoint. */
+	private int fishValues; /**< Set of values (bit v for value v) eliminated somewhere since the last fish fixpoint. */
+	private long allDiffUnits; /**< Set of units with squares changed since the last AllDiff filtering fixpoint. */
+	private final int[] subsetMasks = new int[GRID_SIZE]; /**< Masks of the unit being searched for subsets (the squares' values for naked subsets, the values' positions for hidden subsets). */
+	// ALLDIFF FILTERING
+	private final byte[] unitMatching = new byte[NUM_ALL_UNITS*GRID_SIZE]; /**< Last matching found for each unit, unitMatching[16*u + i] is the value matched to the position i of the unit u. It's only used as a starting point for the next matching. */
+	private final int[] allDiffDomains = new int[GRID_SIZE]; /**< Masks of the squares of the unit being filtered. */
+	private final int[] valueOfPosition = new int[GRID_SIZE]; /**< Value matched to each position of the unit being filtered. */
+	private final int[] positionOfValue = new int[GRID_SIZE]; /**< Position matched to each value of the unit being filtered. */
+	private final int[] reach = new int[GRID_SIZE]; /**< Positions reachable from each position in the alternating graph of the unit being filtered. */
+	private int matchedValues; /**< Set of values already matched in the unit being filtered. */
+	private int augmentVisited; /**< Set of values visited by the current augmenting path search. */
+	// SEARCH FRAMES
+	private final int[] frameSquare = new int[NUM_SQUARES]; /**< Square chosen at each depth of the search. */
+	private final int[] frameValues = new int[NUM_SQUARES*GRID_SIZE]; /**< Values to try at each depth, in order, the values of depth d are frameValues[16*d] to frameValues[16*d + frameCount[d] - 1]. */
+	private final int[] frameCount = new int[NUM_SQUARES]; /**< Number of values to try at each depth. */
+	private final int[] frameNext = new int[NUM_SQUARES]; /**< Index of the next value to try at each depth. */
+	private final int[] frameMark = new int[NUM_SQUARES]; /**< Size of the trail when each depth was opened, changes above it are undone before trying the next value. */
+	private int depth; /**< Number of open frames (depth of the search). */
+	private final int[] lcvCounts = new int[GRID_SIZE]; /**< Scratch buffer of the LCV ordering, appearances in the peers of each value being ordered. */
+	private long random; /**< State of the xorshift generator of the random tie-breaking. */
+	private final int[] unitFailures = new int[NUM_ALL_UNITS]; /**< Number of contradictions found in each unit (a square or a value left without places by its eliminations). The weight of a unit for the dom/wdeg ordering is 1 + its failures, they are kept between restarts and reset when another sudoku is loaded. */
+	// BACKJUMPING
+	private final long[] reasons; /**< Decisions that caused each elimination, reasons[4*(16*s + v)] to reasons[4*(16*s + v) + 3] is the set of levels (bit d for the decision of depth d) that eliminated v from the square s. Only valid while v is eliminated, null if backjumping is disabled. */
+	private final long[] cause = new long[4]; /**< Set of levels that cause the eliminations being made, it's saved as their reason. */
+	private final long[] conflict = new long[4]; /**< Set of levels that caused the last contradiction found by the propagation. */
+	private final long[] frameConflicts; /**< Conflict set of each depth, frameConflicts[4*d] to frameConflicts[4*d + 3] are the levels that caused the failures of its values (and the eliminations of the values it doesn't have). Null if backjumping is disabled. */
+	// PROBING
+	private final long[] probeUnion = new long[NUM_WORDS]; /**< Union of the values left by the successful probes of the square being probed, packed like values. */
+	private int[] probeList; /**< Squares chosen for the current probing pass. */
+	private ProbeTask[] probeTasks; /**< Tasks of the parallel probing, one per probed square, reused between passes. */
+	private final ConcurrentLinkedQueue<SudokuHex> idleProbers = new ConcurrentLinkedQueue<SudokuHex>(); /**< Solvers used by the parallel probes to work on a copy of the values, reused between passes. */
+	// PARALLEL SEARCH
+	private long[] searchBase; /**< Values where the tasks of the parallel search start, before following their decision paths. */
+	private final AtomicReference<long[]> searchSolution = new AtomicReference<long[]>(); /**< First solution found by the parallel search, it also tells the tasks to stop. */
+	private final ConcurrentLinkedQueue<SudokuHex> idleSearchers = new ConcurrentLinkedQueue<SudokuHex>(); /**< Solvers used by the tasks of the parallel search, reused between tasks. */
+	// SYMMETRY BREAKING
+	private int chainUnit; /**< Unit where the free values (the ones that no square of the template has) must be in increasing order. */
+	private final int[] chainValues = new int[GRID_SIZE]; /**< Free values, in increasing order. */
+	private int chainLength; /**< Number of free values, the symmetry breaking is disabled if it's less than 2. */
+	private long numberNodes; /**< Number of values tried by the search. */
+	private int timesUsedHeuristic; /**< Number of times the consistency check pruned a branch. */
+	private final long[] fishHits = new long[MAX_SUBSET+1]; /**< Number of fish of each size (2-4) that eliminated values. */
+	private long numberAllDiffEliminations; /**< Number of values eliminated by the AllDiff filtering. */
+	private long lockedCandidatesHits; /**< Number of box/line intersections that eliminated values (pointing or claiming). */
+	private final long[] nakedSubsetHits = new long[MAX_SUBSET+1]; /**< Number of naked subsets of each size (2-4) that eliminated values. */
+	private final long[] hiddenSubsetHits = new long[MAX_SUBSET+1]; /**< Number of hidden subsets of each size (2-4) that eliminated values. */
+	private long numberProbes; /**< Number of candidates probed. */
+	private long probeEliminations; /**< Number of values eliminated by the probing (failed or excluded by every candidate of a square). */
+	private long numberBackjumps; /**< Number of levels skipped by the backjumping. */
+	private int numberRestarts; /**< Number of times the search was restarted. */
+	private volatile boolean cancelled; /**< The search was cancelled (from another thread), it stops at the next node. */
 	
 	//private int numberBacktracks; /**< */
 	
@@ -123,10 +413,66 @@ public class SudokuHex
 	 * @post The SudokuHex object will be created and ready to be solved.
 	 */
 	public SudokuHex (String template)
+	{
+		this(template, new Strategy());
+	}
+	
+	/**
+	 * Constructor. Prepares the data structures to be used to solve the hexadecimal sudoku with the given strategy.
+	 * @param template String that represents a hexadecimal sudoku.
+	 * @param strategy Heuristics and engine paths to use.
+	 * @pre The template supplied must be a valid sudoku (it must not have two equal numbers in the same row, column and box).
+	 * @post The SudokuHex object will be created and ready to be solved.
+	 */
+	public SudokuHex (String template, Strategy strategy)
 	{
 		//numberBacktracks = 0;
+		this.strategy = strategy;
+		reasons = strategy.backjumping ? new long[NUM_SQUARES*GRID_SIZE*4] : null;
+		frameConflicts = strategy.backjumping ? new long[NUM_SQUARES*4] : null;
+		prepare_template(template);
+		initialize_values();
+	}
+	
+	/**
+	 * Constructor. Prepares an empty solver, to be loaded with a sudoku (or with the values of another solver).
+	 * @param strategy Heuristics and engine paths to use.
+	 * @post The SudokuHex object will be created, but it won't have any possible value until it's loaded.
+	 */
+	public SudokuHex (Strategy strategy)
+	{
+		this.strategy = strategy;
+		reasons = strategy.backjumping ? new long[NUM_SQUARES*GRID_SIZE*4] : null;
+		frameConflicts = strategy.backjumping ? new long[NUM_SQUARES*4] : null;
+		values = new long[NUM_WORDS];
+	}
+	
+	/**
+	 * @brief Loads another sudoku, so that the same solver (and its memory) can be reused.
+	 * @param template String that represents a hexadecimal sudoku.
+	 * @pre The template supplied must be a valid sudoku (it must not have two equal numbers in the same row, column and box).
+	 * @post The solver will be ready to solve the sudoku, as if it had been created for it.
+	 */
+	public void load(String template)
+	{
+		trailSize = 0;
+		depth = 0;
+		clear_queue();
+		Arrays.fill(unitFailures, 0);
+		cancelled = false;
+		// The counters start again, as in a new solver.
+		numberNodes = 0;
+		timesUsedHeuristic = 0;
+		Arrays.fill(fishHits, 0);
+		numberAllDiffEliminations = 0;
+		lockedCandidatesHits = 0;
+		Arrays.fill(nakedSubsetHits, 0);
+		Arrays.fill(hiddenSubsetHits, 0);
+		numberProbes = 0;
+		probeEliminations = 0;
+		numberBackjumps = 0;
+		numberRestarts = 0;
 		prepare_template(template);
-		initialize_units_and_peers();
 		initialize_values();
 	}
 	
@@ -140,404 +486,2604 @@ public class SudokuHex
 	 * @post The template will not have any carriage returns.
 	 * @post The template will replace the ambiguous free square symbols ("." or "-") with a single symbol (".").
 	 */
-	private void prepare_template(String template)
+	private void prepare_template(String template)
+	{
+		template = template.toUpperCase();
+		template = template.replace(" ", "");
+		template = template.replace("\t", "");
+		template = template.replace("\n", "");
+		template = template.replace("-", ".");
+		this.template = template;
+	}
+	
+	/**
+	 * @brief Initializes the dictionary of values corresponding to a square.
+	 * Each square has a set of possible values. If the correct value is known, then it will be only one.
+	 * If the correct value isn't known, then the set will have all the possible values.
+	 * @post Each assigned square will have only its assigned value.
+	 * @post Each unassigned square from the template will have all possible values.
+	 */
+	private void initialize_values()
+	{
+		if(values == null)
+		{
+			values = new long[NUM_WORDS];
+		}
+		int templateIndex = 0;
+		
+		for(int s=0; s<NUM_SQUARES; ++s)
+		{
+			// The value from the template will be read, and it will be added to the values set.
+			// If the value read is the empty symbol (. or -) then all the possible values will be added to the set.
+			if(template.charAt(templateIndex) == '.')
+			{
+				// Free square, add all the possible values
+				set_square(values, s, ALL_VALUES);
+			}
+			else
+			{
+				// Established square, add only the read value
+				set_square(values, s, 1 << SYMBOLS.indexOf(template.charAt(templateIndex)));
+			}
+			++templateIndex;
+		}
+		
+		// Now that the values are set, the data structure must be taken to a consistent state, hence later,
+		// when propagating the restrictions and backtracking, the decisions made are also consistent.
+		for (int s=0; s<NUM_SQUARES; ++s)
+		{
+			// For each square, if it has only one possible value (if it is set), remove the value from its peers.
+			int square = get_square(values, s);
+			if(Integer.bitCount(square) == 1)
+			{
+				for(int peer=NUM_PEERS*s; peer<NUM_PEERS*(s+1); ++peer)
+				{
+					set_square(values, peers[peer], get_square(values, peers[peer]) & ~square);
+				}
+			}
+		}
+		
+		// The eliminations of the template aren't caused by any decision (the reasons of a previous sudoku must be forgotten).
+		if(reasons != null)
+		{
+			Arrays.fill(reasons, 0);
+		}
+		
+		// Finally, the indexes are built from the values.
+		index_values();
+		// No unit has been filtered yet.
+		lockedUnits = (1L << NUM_ALL_UNITS) - 1;
+		subsetUnits = (1L << NUM_ALL_UNITS) - 1;
+		fishValues = ALL_VALUES;
+		allDiffUnits = (1L << NUM_ALL_UNITS) - 1;
+	}
+	
+	/**
+	 * @brief Builds the indexes of the values from scratch.
+	 * Each square is put in the bucket of its number of possible values,
+	 * and its possible values are marked at its position in each of its units and in their bitboards.
+	 */
+	private void index_values()
+	{
+		Arrays.fill(buckets, 0);
+		Arrays.fill(unitPositions, 0);
+		Arrays.fill(digitBoards, 0);
+		for (int s=0; s<NUM_SQUARES; ++s)
+		{
+			reindex_square(s, 0, get_square(values, s));
+		}
+	}
+	
+	/**
+	 * @brief Loads the values of another solver, to work on a copy of them.
+	 * The pending filtering of the other solver is also copied, so this one reaches the same fixpoint.
+	 * @param source Solver whose values are copied. It must not be modified while it's being copied.
+	 * @post The trail, the queue and the search frames will be empty.
+	 */
+	private void load(SudokuHex source)
+	{
+		System.arraycopy(source.values, 0, values, 0, NUM_WORDS);
+		index_values();
+		trailSize = 0;
+		depth = 0;
+		clear_queue();
+		lockedUnits = source.lockedUnits;
+		subsetUnits = source.subsetUnits;
+		fishValues = source.fishValues;
+		allDiffUnits = source.allDiffUnits;
+	}
+	
+	/**
+	 * @brief Returns the mask of possible values of a square.
+	 * @param values Packed dictionary of values.
+	 * @param s Index of the square (16*row + column).
+	 * @return 16 bit mask, bit v is set if v is a possible value of the square.
+	 */
+	private int get_square(long[] values, int s)
+	{
+		return (int)(values[s >> 2] >>> ((s & 3) << 4)) & ALL_VALUES;
+	}
+	
+	/**
+	 * @brief Replaces the mask of possible values of a square.
+	 * @param values Packed dictionary of values.
+	 * @param s Index of the square (16*row + column).
+	 * @param square 16 bit mask, bit v is set if v is a possible value of the square.
+	 */
+	private void set_square(long[] values, int s, int square)
+	{
+		int shift = (s & 3) << 4;
+		values[s >> 2] = (values[s >> 2] & ~((long)ALL_VALUES << shift)) | ((long)square << shift);
+	}
+	
+	/**
+	 * @brief Returns the symbols of the possible values of a square (e.g. "3A" for the mask with bits 3 and 10 set).
+	 * @param square 16 bit mask of possible values.
+	 * @return String with one symbol per possible value, in increasing order.
+	 */
+	private String square_to_string(int square)
+	{
+		String s = "";
+		for(int v=0; v<GRID_SIZE; ++v)
+		{
+			if((square & (1 << v)) != 0)
+			{
+				s += SYMBOLS.charAt(v);
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * @brief Solves the sudoku and changes the values content to a solved state.
+	 * @post The values will be changed to a state belonging to the solution set. If no solution was found, they will be null.
+	 */
+	public void solve()
+	{
+		if(!search())
+		{
+			// The search failed, there's no solution for the sudoku
+			this.values = null;
+		}
+	}
+	
+	/**
+	 * @brief Counts the solutions of the sudoku, up to a limit.
+	 * After each solution the search goes on with the next one, with the same pruning as when solving
+	 * (after a solution, the backjumping goes back chronologically so that no solution is skipped).
+	 * @param limit Number of solutions after which the counting stops (2 is enough to know if the solution is unique).
+	 * @return Number of solutions found, at most limit.
+	 * @post If the limit was reached, values will hold the last solution found, otherwise they will be the ones
+	 * before the counting.
+	 */
+	public long count_solutions(long limit)
+	{
+		long count = 0;
+		int status = start_search();
+		while(status != SEARCH_FAILED && count < limit)
+		{
+			if(status == SEARCH_SOLVED)
+			{
+				if(++count == limit)
+				{
+					break;
+				}
+			}
+			else if(cancelled)
+			{
+				break;
+			}
+			status = resume_search(Long.MAX_VALUE);
+		}
+		return count;
+	}
+	
+	/**
+	 * @brief Tells if the sudoku has exactly one solution, the search stops as soon as a second one is found.
+	 * @return true if the sudoku has only one solution, false if it has none or several.
+	 * @post If the sudoku has several solutions, values will hold the second one found.
+	 */
+	public boolean has_unique_solution()
+	{
+		return count_solutions(2) == 1;
+	}
+	
+	/**
+	 * @brief Counts every solution of the sudoku, in parallel with the workers of a pool.
+	 * The values that no square of the template has (the free values) are interchangeable: permuting them
+	 * in a solution gives another one. So only the solutions where the free values are in increasing order
+	 * in one unit (the one with fewer given squares) are counted, and the count is multiplied by the number
+	 * of permutations of the free values (k!). The order is kept by a propagator, during the search.
+	 * The counting starts from the template, so it doesn't depend on the previous searches of the solver.
+	 * The search space is split into subproblems (the paths of decisions of the first levels, until there are
+	 * enough), and each one is counted by a task. If a checkpoint file is given, the count of each subproblem
+	 * is written to it when finished, and the subproblems already in it aren't counted again. The checkpoint
+	 * belongs to the sudoku and to its subproblems (they depend on the strategy), and each line has a checksum,
+	 * so a line cut by a crash is ignored and its subproblem counted again.
+	 * @param pool Pool of workers.
+	 * @param checkpoint Path of the checkpoint file, null to count without checkpoint.
+	 * @return Number of solutions.
+	 * @throws IOException If the checkpoint can't be read or written, or it belongs to another count (another
+	 * sudoku, or other subproblems).
+	 * @post The values will be the same as before the counting.
+	 */
+	public BigInteger count_all_solutions(ForkJoinPool pool, String checkpoint) throws IOException
+	{
+		if(template == null)
+		{
+			// Not loaded yet...
+			return BigInteger.ZERO;
+		}
+		// Free values, and unit with fewer given squares.
+		int given = 0;
+		int bestUnit = 0;
+		int bestGiven = GRID_SIZE + 1;
+		for(int u=0; u<NUM_ALL_UNITS; ++u)
+		{
+			int unitGiven = 0;
+			for(int i=GRID_SIZE*u; i<GRID_SIZE*(u+1); ++i)
+			{
+				char c = template.charAt(unitSquares[i]);
+				if(c != '.')
+				{
+					given |= 1 << SYMBOLS.indexOf(c);
+					++unitGiven;
+				}
+			}
+			if(unitGiven < bestGiven)
+			{
+				bestUnit = u;
+				bestGiven = unitGiven;
+			}
+		}
+		int[] free = new int[GRID_SIZE];
+		int numberFree = 0;
+		for(int v=0; v<GRID_SIZE; ++v)
+		{
+			if((given & (1 << v)) == 0)
+			{
+				free[numberFree++] = v;
+			}
+		}
+		
+		// Values of the template, the solving (or counting) may have changed the current ones, or failed.
+		long[] current = values;
+		values = new long[NUM_WORDS];
+		initialize_values();
+		searchBase = values.clone();
+		
+		// Subproblems, expanded breadth-first (the same ones every time, so that the checkpoint can be resumed).
+		List<int[]> subproblems = new ArrayList<int[]>();
+		ArrayDeque<int[]> open = new ArrayDeque<int[]>();
+		open.add(new int[0]);
+		while(!open.isEmpty() && open.size() + subproblems.size() < NUM_SUBPROBLEMS)
+		{
+			int[] path = open.poll();
+			if(!load(searchBase, path) || !start_chain(bestUnit, free, numberFree))
+			{
+				continue;
+			}
+			int status = start_search();
+			if(status == SEARCH_SOLVED)
+			{
+				subproblems.add(path);
+			}
+			else if(status == SEARCH_PAUSED)
+			{
+				for(int i=0; i<frameCount[0]; ++i)
+				{
+					int[] child = Arrays.copyOf(path, path.length + 1);
+					child[path.length] = (frameSquare[0] << 4) | frameValues[i];
+					open.add(child);
+				}
+			}
+		}
+		subproblems.addAll(open);
+		
+		// Counts of the subproblems already finished.
+		boolean[] done = new boolean[subproblems.size()];
+		AtomicLong count = new AtomicLong();
+		PrintStream out = null;
+		if(checkpoint != null)
+		{
+			String header = "# " + template + " " + subproblems.size() + " " + Long.toHexString(hash_paths(subproblems));
+			File file = new File(checkpoint);
+			if(file.exists())
+			{
+				BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+				try
+				{
+					if(!header.equals(br.readLine()))
+					{
+						throw new IOException("The checkpoint " + checkpoint + " belongs to another count.");
+					}
+					String strLine;
+					while ((strLine = br.readLine()) != null)
+					{
+						// The lines without a valid checksum were cut by a crash, their subproblems are counted again.
+						String[] fields = strLine.trim().split(" ");
+						if(fields.length == 3)
+						{
+							try
+							{
+								int index = Integer.parseInt(fields[0]);
+								long solutions = Long.parseLong(fields[1]);
+								if(fields[2].equals(checkpoint_checksum(index, solutions)) && !done[index])
+								{
+									done[index] = true;
+									count.addAndGet(solutions);
+								}
+							}
+							catch(NumberFormatException e)
+							{
+								// Cut in the middle of a number...
+							}
+						}
+					}
+				}
+				finally
+				{
+					br.close();
+				}
+				// If the last line was cut, the new ones must not be appended to it.
+				boolean cut;
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try
+				{
+					raf.seek(raf.length() - 1);
+					cut = raf.read() != '\n';
+				}
+				finally
+				{
+					raf.close();
+				}
+				out = new PrintStream(new FileOutputStream(file, true));
+				if(cut)
+				{
+					out.println();
+					out.flush();
+				}
+			}
+			else
+			{
+				out = new PrintStream(new FileOutputStream(file));
+				out.println(header);
+				out.flush();
+			}
+		}
+		
+		try
+		{
+			pool.invoke(new CountTask(subproblems, done, 0, subproblems.size(), bestUnit, free, numberFree, count, out));
+		}
+		finally
+		{
+			if(out != null)
+			{
+				out.close();
+			}
+		}
+		for(SudokuHex searcher : idleSearchers)
+		{
+			numberNodes += searcher.numberNodes;
+			searcher.numberNodes = 0;
+		}
+		
+		// Back to the values before the counting.
+		values = current;
+		if(values != null)
+		{
+			index_values();
+		}
+		trailSize = 0;
+		depth = 0;
+		chainLength = 0;
+		
+		BigInteger permutations = BigInteger.ONE;
+		for(int k=2; k<=numberFree; ++k)
+		{
+			permutations = permutations.multiply(BigInteger.valueOf(k));
+		}
+		return permutations.multiply(BigInteger.valueOf(count.get()));
+	}
+	
+	/**
+	 * @brief Hashes the paths of decisions of the subproblems, to tell if a checkpoint belongs to them.
+	 * @param paths Paths of decisions of the subproblems.
+	 * @return 64 bit hash of the paths, in order.
+	 */
+	private static long hash_paths(List<int[]> paths)
+	{
+		long hash = paths.size();
+		for(int[] path : paths)
+		{
+			hash = (hash ^ path.length) * 0x9E3779B97F4A7C15L;
+			for(int decision : path)
+			{
+				hash = (hash ^ decision) * 0x9E3779B97F4A7C15L;
+				hash ^= hash >>> 32;
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * @brief Returns the checksum of a line of the checkpoint, the count of a subproblem.
+	 * @param index Index of the subproblem.
+	 * @param solutions Number of solutions of the subproblem.
+	 * @return Checksum, in hexadecimal.
+	 */
+	private static String checkpoint_checksum(int index, long solutions)
+	{
+		long hash = ((index + 1) * 0x9E3779B97F4A7C15L) ^ solutions;
+		hash *= 0xBF58476D1CE4E5B9L;
+		return Long.toHexString(hash ^ (hash >>> 31));
+	}
+	
+	/**
+	 * @brief Enables the symmetry breaking, and propagates it.
+	 * @param unit Unit where the free values must be in increasing order.
+	 * @param free Free values, in increasing order.
+	 * @param length Number of free values.
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean start_chain(int unit, int[] free, int length)
+	{
+		chainUnit = unit;
+		System.arraycopy(free, 0, chainValues, 0, length);
+		chainLength = length;
+		return propagate();
+	}
+	
+	/**
+	 * @brief Task of the parallel counting, a range of subproblems.
+	 * The range is split in halves until it's a single subproblem, that is counted with a solver taken from
+	 * idleSearchers (or a new one). The count of each task is added once to the total, so the workers don't contend for it.
+	 */
+	private final class CountTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final List<int[]> subproblems; /**< Paths of decisions of the subproblems. */
+		private final boolean[] done; /**< Subproblems already counted (in the checkpoint). */
+		private final int first; /**< First subproblem of the range. */
+		private final int last; /**< Last subproblem of the range (exclusive). */
+		private final int unit; /**< Unit of the symmetry breaking. */
+		private final int[] free; /**< Free values. */
+		private final int numberFree; /**< Number of free values. */
+		private final AtomicLong count; /**< Total count. */
+		private final PrintStream checkpoint; /**< Checkpoint where the count of each subproblem is written, null if there isn't any. */
+		
+		private CountTask(List<int[]> subproblems, boolean[] done, int first, int last, int unit, int[] free, int numberFree, AtomicLong count, PrintStream checkpoint)
+		{
+			this.subproblems = subproblems;
+			this.done = done;
+			this.first = first;
+			this.last = last;
+			this.unit = unit;
+			this.free = free;
+			this.numberFree = numberFree;
+			this.count = count;
+			this.checkpoint = checkpoint;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(last - first > 1)
+			{
+				int middle = (first + last) >>> 1;
+				invokeAll(new CountTask(subproblems, done, first, middle, unit, free, numberFree, count, checkpoint),
+						new CountTask(subproblems, done, middle, last, unit, free, numberFree, count, checkpoint));
+				return;
+			}
+			if(first == last || done[first])
+			{
+				return;
+			}
+			SudokuHex searcher = idleSearchers.poll();
+			if(searcher == null)
+			{
+				searcher = new SudokuHex(strategy);
+			}
+			long solutions = 0;
+			if(searcher.load(searchBase, subproblems.get(first)) && searcher.start_chain(unit, free, numberFree))
+			{
+				solutions = searcher.count_solutions(Long.MAX_VALUE);
+			}
+			idleSearchers.offer(searcher);
+			count.addAndGet(solutions);
+			if(checkpoint != null)
+			{
+				synchronized(checkpoint)
+				{
+					checkpoint.println(first + " " + solutions + " " + checkpoint_checksum(first, solutions));
+					checkpoint.flush();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @brief Cancels the search, that can be running in another thread. It stops at the next node, without a solution.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	/**
+	 * @brief Tells if the search was cancelled.
+	 * @return true if cancel was called (the values aren't a solution), false otherwise.
+	 */
+	public boolean is_cancelled()
+	{
+		return cancelled;
+	}
+	
+	/**
+	 * @brief Returns the strategy of the solver.
+	 * @return Heuristics and engine paths used by this solver.
+	 */
+	public Strategy get_strategy()
+	{
+		return strategy;
+	}
+	
+	/**
+	 * @brief Returns the number of times the consistency check pruned a branch.
+	 * @return Times used the consistency heuristic (0 if the check is disabled).
+	 */
+	public int get_times_used_heuristic()
+	{
+		return timesUsedHeuristic;
+	}
+	
+	/**
+	 * @brief Returns the number of values tried by the search (of every task, in the parallel search and counting).
+	 * @return Number of nodes.
+	 */
+	public long get_number_nodes()
+	{
+		return numberNodes;
+	}
+	
+	/**
+	 * @brief Returns the number of box/line intersections that eliminated values (pointing or claiming).
+	 * @return Locked candidates hits.
+	 */
+	public long get_locked_candidates_hits()
+	{
+		return lockedCandidatesHits;
+	}
+	
+	/**
+	 * @brief Returns the number of naked subsets of a size that eliminated values.
+	 * @param size Size of the subsets (2-4).
+	 * @return Naked subset hits.
+	 */
+	public long get_naked_subset_hits(int size)
+	{
+		return nakedSubsetHits[size];
+	}
+	
+	/**
+	 * @brief Returns the number of hidden subsets of a size that eliminated values.
+	 * @param size Size of the subsets (2-4).
+	 * @return Hidden subset hits.
+	 */
+	public long get_hidden_subset_hits(int size)
+	{
+		return hiddenSubsetHits[size];
+	}
+	
+	/**
+	 * @brief Returns the number of fish of a size that eliminated values.
+	 * @param size Size of the fish (2-4).
+	 * @return Fish hits.
+	 */
+	public long get_fish_hits(int size)
+	{
+		return fishHits[size];
+	}
+	
+	/**
+	 * @brief Returns the number of values eliminated by the AllDiff filtering.
+	 * @return AllDiff eliminations.
+	 */
+	public long get_all_diff_eliminations()
+	{
+		return numberAllDiffEliminations;
+	}
+	
+	/**
+	 * @brief Returns the number of candidates probed.
+	 * @return Number of probes.
+	 */
+	public long get_number_probes()
+	{
+		return numberProbes;
+	}
+	
+	/**
+	 * @brief Returns the number of values eliminated by the probing.
+	 * @return Probe eliminations.
+	 */
+	public long get_probe_eliminations()
+	{
+		return probeEliminations;
+	}
+	
+	/**
+	 * @brief Returns the number of levels skipped by the backjumping.
+	 * @return Number of backjumps.
+	 */
+	public long get_number_backjumps()
+	{
+		return numberBackjumps;
+	}
+	
+	/**
+	 * @brief Returns the number of times the search was restarted.
+	 * @return Number of restarts.
+	 */
+	public int get_number_restarts()
+	{
+		return numberRestarts;
+	}
+	
+	/**
+	 * @brief Prints in the default system output the counters of the rules and search techniques enabled by the strategy.
+	 */
+	protected void print_statistics()
+	{
+		if(strategy.lockedCandidates)
+		{
+			System.out.println("Locked candidates hits: " + lockedCandidatesHits);
+		}
+		for(int k=2; k<=strategy.nakedSubsets; ++k)
+		{
+			System.out.println("Naked subsets of size " + k + " hits: " + nakedSubsetHits[k]);
+		}
+		for(int k=2; k<=strategy.hiddenSubsets; ++k)
+		{
+			System.out.println("Hidden subsets of size " + k + " hits: " + hiddenSubsetHits[k]);
+		}
+		for(int k=2; k<=strategy.fish; ++k)
+		{
+			System.out.println("Fish of size " + k + " hits: " + fishHits[k]);
+		}
+		if(strategy.allDiffFiltering)
+		{
+			System.out.println("AllDiff filtering eliminations: " + numberAllDiffEliminations);
+		}
+		if(strategy.probeDepth > 0)
+		{
+			System.out.println("Candidates probed: " + numberProbes + ", eliminations: " + probeEliminations);
+		}
+		if(strategy.backjumping)
+		{
+			System.out.println("Levels skipped by backjumping: " + numberBackjumps);
+		}
+		if(strategy.restarts)
+		{
+			System.out.println("Number of restarts: " + numberRestarts);
+		}
+	}
+	
+	/**
+	 * @brief Solves a sudoku with several strategies at once (a portfolio), each one in its own thread.
+	 * The first solver to finish (with a solution, or proving that there isn't any) wins, and the others are cancelled.
+	 * @param template String that represents a hexadecimal sudoku.
+	 * @param strategies Strategies to race.
+	 * @param executor Executor where the solvers run, it should have a thread for each strategy.
+	 * @return Solver of the winning strategy (its values are the solution, or null if there isn't any),
+	 * null if every solver failed with an exception.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the winner.
+	 */
+	public static SudokuHex solve_portfolio(String template, Strategy[] strategies, ExecutorService executor) throws InterruptedException
+	{
+		final SudokuHex[] solvers = new SudokuHex[strategies.length];
+		for(int i=0; i<strategies.length; ++i)
+		{
+			solvers[i] = new SudokuHex(template, strategies[i]);
+		}
+		final AtomicReference<SudokuHex> winner = new AtomicReference<SudokuHex>();
+		CompletionService<Void> finished = new ExecutorCompletionService<Void>(executor);
+		for(final SudokuHex solver : solvers)
+		{
+			finished.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					solver.solve();
+					if(!solver.cancelled && winner.compareAndSet(null, solver))
+					{
+						for(SudokuHex other : solvers)
+						{
+							if(other != solver)
+							{
+								other.cancel();
+							}
+						}
+					}
+					return null;
+				}
+			});
+		}
+		for(int i=0; i<solvers.length && winner.get() == null; ++i)
+		{
+			finished.take();
+		}
+		return winner.get();
+	}
+	
+	/**
+	 * @brief Solves the sudoku in parallel, with the workers of a pool.
+	 * The search tree is split into tasks on demand: while a task is searching, when the pool runs out of
+	 * tasks to steal, it gives away the values not tried yet of its shallowest depth, each one as a new task.
+	 * So the tree is split at the top while the subtrees are big enough to keep the workers busy, and
+	 * not at all if the sudoku is solved in the first slice. The first solution found stops every task.
+	 * @param pool Pool of workers.
+	 * @post If the sudoku has a solution, values will hold it, otherwise it will be null.
+	 */
+	public void solve(ForkJoinPool pool)
+	{
+		if(values == null)
+		{
+			return;
+		}
+		searchBase = values.clone();
+		searchSolution.set(null);
+		pool.invoke(new SearchTask(new int[0]));
+		long[] solution = searchSolution.get();
+		if(solution == null)
+		{
+			// The search failed, there's no solution for the sudoku
+			this.values = null;
+		}
+		else
+		{
+			System.arraycopy(solution, 0, values, 0, NUM_WORDS);
+			index_values();
+		}
+		for(SudokuHex searcher : idleSearchers)
+		{
+			numberNodes += searcher.numberNodes;
+			searcher.numberNodes = 0;
+		}
+	}
+	
+	/**
+	 * @brief Task of the parallel search, the subtree reached from the base values by a path of decisions.
+	 * The task searches its subtree with a solver taken from idleSearchers (or a new one), in slices of
+	 * searchSlice nodes, and splits it between the slices if there are idle workers.
+	 */
+	private final class SearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int[] path; /**< Decisions from the base values, each one is (square << 4 | value). */
+		
+		private SearchTask(int[] path)
+		{
+			this.path = path;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(searchSolution.get() != null)
+			{
+				return;
+			}
+			SudokuHex searcher = idleSearchers.poll();
+			if(searcher == null)
+			{
+				searcher = new SudokuHex(strategy);
+			}
+			List<SearchTask> split = new ArrayList<SearchTask>();
+			List<int[]> paths = new ArrayList<int[]>();
+			int status = searcher.load(searchBase, path) ? searcher.start_search() : SEARCH_FAILED;
+			while(status == SEARCH_PAUSED && searchSolution.get() == null)
+			{
+				if(getSurplusQueuedTaskCount() <= 0)
+				{
+					// Nobody has work to steal, share some branches.
+					paths.clear();
+					searcher.split_search(path, paths);
+					for(int[] taskPath : paths)
+					{
+						SearchTask task = new SearchTask(taskPath);
+						split.add(task);
+						task.fork();
+					}
+				}
+				status = searcher.resume_search(strategy.searchSlice);
+			}
+			if(status == SEARCH_SOLVED)
+			{
+				searchSolution.compareAndSet(null, searcher.values.clone());
+			}
+			idleSearchers.offer(searcher);
+			for(SearchTask task : split)
+			{
+				task.join();
+			}
+		}
+	}
+	
+	/**
+	 * @brief Loads some values and follows a path of decisions from them, to search the subtree it reaches.
+	 * The decisions are propagated as if they were part of the sudoku (the search starts below them).
+	 * @param base Values to load.
+	 * @param path Decisions, each one is (square << 4 | value).
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean load(long[] base, int[] path)
+	{
+		System.arraycopy(base, 0, values, 0, NUM_WORDS);
+		index_values();
+		trailSize = 0;
+		depth = 0;
+		clear_queue();
+		lockedUnits = (1L << NUM_ALL_UNITS) - 1;
+		subsetUnits = (1L << NUM_ALL_UNITS) - 1;
+		fishValues = ALL_VALUES;
+		allDiffUnits = (1L << NUM_ALL_UNITS) - 1;
+		chainLength = 0;
+		if(reasons != null)
+		{
+			// The values eliminated in the base aren't caused by any decision (the reasons of a previous task must be forgotten).
+			Arrays.fill(reasons, 0);
+		}
+		for(int decision : path)
+		{
+			if(reasons != null)
+			{
+				Arrays.fill(cause, 0);
+			}
+			if(!assign(decision >>> 4, decision & 0xF))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @brief Gives away the values not tried yet of the shallowest depth that has any, as the paths of new tasks.
+	 * This search won't try them: they are dropped from the frame, so the last value tried of each depth is still
+	 * the decision of the search (the one of the paths given away by later splits). With backjumping, that depth is made to depend on all the previous ones,
+	 * as its conflict set won't explain the failures of the values given away.
+	 * @param path Path of decisions that this search started from.
+	 * @param paths List where the paths of the new tasks are added.
+	 */
+	private void split_search(int[] path, List<int[]> paths)
+	{
+		for(int d=0; d<depth; ++d)
+		{
+			if(frameNext[d] < frameCount[d])
+			{
+				// The path of each new task is the path of this one, the decisions of the depths above d, and one of the values of d.
+				int[] prefix = Arrays.copyOf(path, path.length + d + 1);
+				for(int i=0; i<d; ++i)
+				{
+					prefix[path.length + i] = (frameSquare[i] << 4) | frameValues[GRID_SIZE*i + frameNext[i] - 1];
+				}
+				for(int i=frameNext[d]; i<frameCount[d]; ++i)
+				{
+					int[] taskPath = prefix.clone();
+					taskPath[path.length + d] = (frameSquare[d] << 4) | frameValues[GRID_SIZE*d + i];
+					paths.add(taskPath);
+				}
+				frameCount[d] = frameNext[d];
+				if(reasons != null)
+				{
+					set_cause_levels(d + 1);
+					System.arraycopy(cause, 0, frameConflicts, 4*d, 4);
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @brief Depth-first search of a solution, starting from the current values.
+	 * @return true if a solution was found (values will hold it), false otherwise (values will be restored).
+	 */
+	private boolean search()
+	{
+		if(!strategy.restarts)
+		{
+			int status = start_search();
+			return status == SEARCH_SOLVED || (status == SEARCH_PAUSED && resume_search(Long.MAX_VALUE) == SEARCH_SOLVED);
+		}
+		
+		// Each run is stopped after its node budget, and the next one starts again from the root with other random ties.
+		// The budgets follow the Luby sequence (1, 1, 2, 1, 1, 2, 4, ...), so some runs are always long enough to finish.
+		// The weights of the units learned by a run are kept for the next ones.
+		random = strategy.seed ^ 0x9E3779B97F4A7C15L;
+		if(random == 0)
+		{
+			random = 0x9E3779B97F4A7C15L;
+		}
+		for(long run=0; ; ++run)
+		{
+			int status = start_search();
+			if(status == SEARCH_PAUSED)
+			{
+				status = resume_search(strategy.restartBase * luby(run));
+			}
+			if(status != SEARCH_PAUSED || cancelled)
+			{
+				return status == SEARCH_SOLVED;
+			}
+			undo(0);
+			++numberRestarts;
+		}
+	}
+	
+	/**
+	 * @brief Returns a term of the Luby sequence (1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...).
+	 * @param i Index of the term, from 0.
+	 * @return The term.
+	 */
+	private static long luby(long i)
+	{
+		// Find the complete subsequence that contains the term, and its size (2^(seq+1) - 1).
+		long size = 1;
+		int seq = 0;
+		while(size < i + 1)
+		{
+			++seq;
+			size = 2*size + 1;
+		}
+		// Go down to the subsequence that the term is in, until it's the last term of one.
+		while(size - 1 != i)
+		{
+			size = (size - 1) >> 1;
+			--seq;
+			i = i % size;
+		}
+		return 1L << seq;
+	}
+	
+	/**
+	 * @brief Returns a random number, from the xorshift generator of the tie-breaking.
+	 * @param bound Upper bound (exclusive), it must be positive.
+	 * @return Random number between 0 and bound - 1.
+	 */
+	private int random_int(int bound)
+	{
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return (int)((random >>> 1) % bound);
+	}
+	
+	/**
+	 * @brief Prepares the search from the current values, opening the root frame.
+	 * @return SEARCH_SOLVED if the values are already a solution, SEARCH_FAILED if they are inconsistent
+	 * (or the probing of the root found a contradiction), SEARCH_PAUSED if the root frame was opened and
+	 * resume_search must be called to explore the search space.
+	 */
+	protected int start_search()
+	{
+		depth = 0;
+		if(values == null)
+		{
+			// Already failed...
+			return SEARCH_FAILED;
+		}
+		if((buckets[0] | buckets[1] | buckets[2] | buckets[3]) != 0)
+		{
+			// Contradiction! A square doesn't have any possible value!
+			return SEARCH_FAILED;
+		}
+		return open_frame();
+	}
+	
+	/**
+	 * @brief Explores the search space depth-first, with an explicit stack of frames instead of recursion.
+	 * Each frame has the square chosen at its depth, its values in the order they'll be tried and the trail mark
+	 * to restore the values before trying the next one. The search can be stopped after a number of nodes and
+	 * resumed later, and after a solution is found resuming it looks for the next one.
+	 * @param maxNodes Maximum number of values to try before pausing.
+	 * @return SEARCH_SOLVED if a solution was found (values will hold it), SEARCH_FAILED if the search space
+	 * was exhausted, SEARCH_PAUSED if the node budget ran out.
+	 */
+	protected int resume_search(long maxNodes)
+	{
+		while(depth > 0)
+		{
+			int d = depth - 1;
+			// Before trying another value, the values of this depth must be restored.
+			undo(frameMark[d]);
+			if(frameNext[d] == frameCount[d])
+			{
+				// If after checking all the values, none provides a solution, this branch doesn't have a solution, backtrack!
+				--depth;
+				if(reasons != null && !backjump(d))
+				{
+					// None of the decisions caused the failure, there's no solution at all.
+					depth = 0;
+					return SEARCH_FAILED;
+				}
+				continue;
+			}
+			if(maxNodes-- <= 0 || cancelled)
+			{
+				return SEARCH_PAUSED;
+			}
+			++numberNodes;
+			// Assign the next value to the square and search depth-first
+			// If the assignation fails, the sub-branch doesn't have a solution, try the next value!
+			if(reasons != null)
+			{
+				set_cause_level(d);
+			}
+			int status = assign(frameSquare[d], frameValues[GRID_SIZE*d + frameNext[d]++]) ? open_frame() : SEARCH_FAILED;
+			if(status == SEARCH_SOLVED)
+			{
+				// Solved!
+				if(reasons != null)
+				{
+					forget_conflicts();
+				}
+				return SEARCH_SOLVED;
+			}
+			if(status == SEARCH_FAILED && reasons != null)
+			{
+				// The decisions that caused the contradiction are added to the conflict set of this depth.
+				// If the decision of this depth isn't one of them, its other values will fail too.
+				for(int k=0; k<4; ++k)
+				{
+					frameConflicts[4*d + k] |= conflict[k];
+				}
+				if((conflict[d >> 6] & (1L << d)) == 0)
+				{
+					frameNext[d] = frameCount[d];
+				}
+			}
+			//numberBacktracks++;
+		}
+		return SEARCH_FAILED;
+	}
+	
+	/**
+	 * @brief Opens a new frame at the top of the search stack, from the current (consistent) values.
+	 * In the first levels of the search, the candidates are probed before choosing the square.
+	 * @return SEARCH_SOLVED if the values are a solution (no frame is opened), SEARCH_FAILED if the probing
+	 * found a contradiction (no frame is opened), SEARCH_PAUSED if a frame was opened.
+	 */
+	private int open_frame()
+	{
+		if(depth < strategy.probeDepth && !probe())
+		{
+			if(reasons != null)
+			{
+				// The probes don't track their reasons, every decision is blamed.
+				set_cause_levels(depth);
+				System.arraycopy(cause, 0, conflict, 0, 4);
+			}
+			return SEARCH_FAILED;
+		}
+		
+		// Check goal condition (if the sudoku is solved) 
+		// and pick the node that minimizes the branching factor (the square with minimal value choices (different from one)).
+		// It's the first square of the first non empty bucket, starting from the bucket of the squares with 2 values.
+		// If every one of them is empty, every square has only one value.
+		int bestSquare = -1;
+		int bestSquareLength = 0;
+		
+		if(strategy.weightedDegree)
+		{
+			bestSquare = select_weighted_square();
+		}
+		else
+		{
+			for (int k=8; k<(GRID_SIZE+1)*4; ++k)
+			{
+				if(buckets[k] != 0)
+				{
+					bestSquare = ((k & 3) << 6) + Long.numberOfTrailingZeros(buckets[k]);
+					bestSquareLength = k >> 2;
+					break;
+				}
+			}
+			if(strategy.restarts && bestSquare >= 0)
+			{
+				bestSquare = random_square(bestSquareLength);
+			}
+		}
+		
+		//System.out.println("Found best square, "+bestSquare+" with degree "+bestSquareLength);
+		
+		if(bestSquare < 0)
+		{
+			// Solved! Every square has only one value.
+			return SEARCH_SOLVED;
+		}
+		
+		// Not solved, pick the tree with least branches from our forest of solution trees.
+		int d = depth++;
+		frameSquare[d] = bestSquare;
+		frameNext[d] = 0;
+		frameMark[d] = trailSize;
+		if(strategy.lcv)
+		{
+			frameCount[d] = order_values(bestSquare, GRID_SIZE*d);
+		}
+		else
+		{
+			int n = 0;
+			for(int temp=get_square(values, bestSquare); temp!=0; temp&=temp-1)
+			{
+				frameValues[GRID_SIZE*d + n++] = Integer.numberOfTrailingZeros(temp);
+			}
+			frameCount[d] = n;
+		}
+		if(reasons != null)
+		{
+			// The values that the square doesn't have were eliminated by earlier decisions, that are part of the conflict.
+			Arrays.fill(frameConflicts, 4*d, 4*d + 4, 0);
+			add_reasons(frameConflicts, 4*d, bestSquare, ~get_square(values, bestSquare) & ALL_VALUES);
+		}
+		return SEARCH_PAUSED;
+	}
+	
+	/**
+	 * @brief Picks the square with the smallest ratio between its number of possible values and its weighted degree (dom/wdeg).
+	 * The weighted degree of a square is the sum of the weights of its 3 units. The ratios are compared by
+	 * cross-multiplication, and the buckets are visited from the smallest, so the search stops at the first
+	 * bucket where not even a square with the maximum possible degree could improve the best ratio.
+	 * @return Index of the square, -1 if every square has only one value.
+	 */
+	private int select_weighted_square()
+	{
+		int maxRow = 0;
+		int maxColumn = 0;
+		int maxBox = 0;
+		for(int u=0; u<GRID_SIZE; ++u)
+		{
+			maxRow = Math.max(maxRow, unitFailures[u]);
+			maxColumn = Math.max(maxColumn, unitFailures[GRID_SIZE + u]);
+			maxBox = Math.max(maxBox, unitFailures[2*GRID_SIZE + u]);
+		}
+		int maxDegree = NUM_UNITS + maxRow + maxColumn + maxBox;
+		
+		int bestSquare = -1;
+		int bestLength = 0;
+		int bestDegree = 0;
+		int ties = 0;
+		for(int length=2; length<=GRID_SIZE; ++length)
+		{
+			if(bestSquare >= 0 && length*bestDegree >= bestLength*maxDegree)
+			{
+				break;
+			}
+			for(int k=0; k<4; ++k)
+			{
+				long bucket = buckets[4*length + k];
+				while(bucket != 0)
+				{
+					int s = (k << 6) + Long.numberOfTrailingZeros(bucket);
+					bucket &= bucket - 1;
+					int degree = NUM_UNITS + unitFailures[squareUnits[NUM_UNITS*s]] + unitFailures[squareUnits[NUM_UNITS*s + 1]] + unitFailures[squareUnits[NUM_UNITS*s + 2]];
+					if(bestSquare < 0 || length*bestDegree < bestLength*degree)
+					{
+						bestSquare = s;
+						bestLength = length;
+						bestDegree = degree;
+						ties = 1;
+					}
+					else if(strategy.restarts && length*bestDegree == bestLength*degree && random_int(++ties) == 0)
+					{
+						// Each of the tied squares ends up chosen with the same probability.
+						bestSquare = s;
+						bestLength = length;
+						bestDegree = degree;
+					}
+				}
+			}
+		}
+		return bestSquare;
+	}
+	
+	/**
+	 * @brief Picks one of the squares of a bucket at random.
+	 * @param length Number of possible values of the bucket's squares, the bucket must not be empty.
+	 * @return Index of the square.
+	 */
+	private int random_square(int length)
+	{
+		int count = 0;
+		for(int k=0; k<4; ++k)
+		{
+			count += Long.bitCount(buckets[4*length + k]);
+		}
+		int chosen = random_int(count);
+		for(int k=0; ; ++k)
+		{
+			long bucket = buckets[4*length + k];
+			int size = Long.bitCount(bucket);
+			if(chosen < size)
+			{
+				// Skip the first squares of this part of the bucket.
+				for(int i=0; i<chosen; ++i)
+				{
+					bucket &= bucket - 1;
+				}
+				return (k << 6) + Long.numberOfTrailingZeros(bucket);
+			}
+			chosen -= size;
+		}
+	}
+	
+	/**
+	 * @brief Returns the unit shared by two peers (their row, else their column, else their box).
+	 * @param s Index of a square.
+	 * @param peer Index of one of its peers.
+	 * @return Index of the unit.
+	 */
+	private int shared_unit(int s, int peer)
+	{
+		if(row[s] == row[peer])
+		{
+			return squareUnits[NUM_UNITS*s];
+		}
+		return column[s] == column[peer] ? squareUnits[NUM_UNITS*s + 1] : squareUnits[NUM_UNITS*s + 2];
+	}
+	
+	/**
+	 * @brief Goes back from an exhausted depth to the most recent decision of its conflict set.
+	 * The depths in between are skipped, their decisions didn't cause the failure so trying their other values
+	 * would fail the same way. The conflict set (without the exhausted depth) is added to the one of the depth reached.
+	 * @param d Exhausted depth, already closed.
+	 * @return false if the conflict set doesn't have any decision (the sudoku doesn't have a solution), true otherwise.
+	 */
+	private boolean backjump(int d)
+	{
+		frameConflicts[4*d + (d >> 6)] &= ~(1L << d);
+		int culprit = -1;
+		for(int k=3; k>=0 && culprit<0; --k)
+		{
+			if(frameConflicts[4*d + k] != 0)
+			{
+				culprit = 64*k + 63 - Long.numberOfLeadingZeros(frameConflicts[4*d + k]);
+			}
+		}
+		if(culprit < 0)
+		{
+			return false;
+		}
+		numberBackjumps += d - 1 - culprit;
+		for(int k=0; k<4; ++k)
+		{
+			frameConflicts[4*culprit + k] |= frameConflicts[4*d + k];
+		}
+		depth = culprit + 1;
+		return true;
+	}
+	
+	/**
+	 * @brief Makes every open depth depend on all the previous ones, so that the search backtracks chronologically.
+	 * After a solution is found, the failures below a depth don't explain why its other values would fail.
+	 */
+	private void forget_conflicts()
+	{
+		for(int d=0; d<depth; ++d)
+		{
+			set_cause_levels(d + 1);
+			System.arraycopy(cause, 0, frameConflicts, 4*d, 4);
+		}
+	}
+	
+	/**
+	 * @brief Makes the decision of a single depth the cause of the next eliminations.
+	 * @param level Depth of the decision.
+	 */
+	private void set_cause_level(int level)
+	{
+		Arrays.fill(cause, 0);
+		cause[level >> 6] = 1L << level;
+	}
+	
+	/**
+	 * @brief Makes the decisions of the first depths the cause of the next eliminations.
+	 * It's the conservative reason of the rules that don't explain their eliminations.
+	 * @param levels Number of depths, from the root.
+	 */
+	private void set_cause_levels(int levels)
+	{
+		for(int k=0; k<4; ++k)
+		{
+			int bits = Math.max(0, Math.min(64, levels - 64*k));
+			cause[k] = bits == 64 ? -1L : (1L << bits) - 1;
+		}
+	}
+	
+	/**
+	 * @brief Adds the reasons of the eliminations of some values of a square to a set of levels.
+	 * @param set Array where the set is.
+	 * @param offset Position of the set in the array.
+	 * @param s Index of the square.
+	 * @param mask Eliminated values whose reasons are added.
+	 */
+	private void add_reasons(long[] set, int offset, int s, int mask)
+	{
+		while(mask != 0)
+		{
+			int reason = 4*(GRID_SIZE*s + Integer.numberOfTrailingZeros(mask));
+			mask &= mask - 1;
+			set[offset] |= reasons[reason];
+			set[offset + 1] |= reasons[reason + 1];
+			set[offset + 2] |= reasons[reason + 2];
+			set[offset + 3] |= reasons[reason + 3];
+		}
+	}
+	
+	/**
+	 * @brief Probes the candidates of the squares with fewer possible values (failed literals, singleton arc consistency).
+	 * Each candidate of a square is assigned tentatively and propagated, and undone with the trail afterwards.
+	 * A candidate that leads to a contradiction can't be the square's value, and a value that isn't left
+	 * anywhere by any of the successful candidates of the square can't be either (it's excluded whatever the
+	 * square's value is), so both are eliminated. The passes are repeated until they don't eliminate anything.
+	 * @return false if a contradiction was found (no candidate of a square succeeds), true otherwise.
+	 */
+	private boolean probe()
+	{
+		// The values may come from the template, not propagated yet.
+		if(!propagate())
+		{
+			return false;
+		}
+		if(probeList == null)
+		{
+			probeList = new int[strategy.probeSquares];
+		}
+		boolean changed = true;
+		while(changed)
+		{
+			changed = false;
+			int count = select_probe_squares();
+			if(strategy.probePool != null && count > 1)
+			{
+				// The probes of each square are independent, they run in parallel on copies of the values
+				// and the eliminations are made here afterwards.
+				if(probeTasks == null)
+				{
+					probeTasks = new ProbeTask[strategy.probeSquares];
+					for(int i=0; i<strategy.probeSquares; ++i)
+					{
+						probeTasks[i] = new ProbeTask();
+					}
+				}
+				final ProbeTask[] tasks = Arrays.copyOf(probeTasks, count);
+				for(int i=0; i<count; ++i)
+				{
+					tasks[i].reinitialize();
+					tasks[i].square = probeList[i];
+				}
+				strategy.probePool.invoke(new RecursiveAction()
+				{
+					private static final long serialVersionUID = 1L;
+					
+					@Override
+					protected void compute()
+					{
+						invokeAll(tasks);
+					}
+				});
+				for(int i=0; i<count; ++i)
+				{
+					numberProbes += tasks[i].probes;
+					if(tasks[i].failed)
+					{
+						return false;
+					}
+					System.arraycopy(tasks[i].union, 0, probeUnion, 0, NUM_WORDS);
+					int eliminated = eliminate_excluded();
+					if(eliminated < 0)
+					{
+						return false;
+					}
+					changed |= eliminated > 0;
+				}
+			}
+			else
+			{
+				for(int i=0; i<count; ++i)
+				{
+					if(!probe_square(probeList[i]))
+					{
+						return false;
+					}
+					int eliminated = eliminate_excluded();
+					if(eliminated < 0)
+					{
+						return false;
+					}
+					changed |= eliminated > 0;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @brief Chooses the squares to probe, the first ones of the buckets of the squares with fewer possible values.
+	 * @return Number of squares written in probeList.
+	 */
+	private int select_probe_squares()
+	{
+		int count = 0;
+		for (int k=8; k<(GRID_SIZE+1)*4 && count<probeList.length; ++k)
+		{
+			long bucket = buckets[k];
+			while(bucket != 0 && count<probeList.length)
+			{
+				probeList[count++] = ((k & 3) << 6) + Long.numberOfTrailingZeros(bucket);
+				bucket &= bucket - 1;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @brief Probes every candidate of a square, leaving in probeUnion the union of the values left by the successful ones.
+	 * @param s Index of the square.
+	 * @return false if every candidate leads to a contradiction, true otherwise.
+	 * @post The values will be the same as before the probing.
+	 */
+	private boolean probe_square(int s)
+	{
+		Arrays.fill(probeUnion, 0);
+		int candidates = get_square(values, s);
+		boolean found = false;
+		while(candidates != 0)
+		{
+			int v = Integer.numberOfTrailingZeros(candidates);
+			candidates &= candidates - 1;
+			int mark = trailSize;
+			++numberProbes;
+			if(reasons != null)
+			{
+				set_cause_levels(depth);
+			}
+			if(assign(s, v))
+			{
+				found = true;
+				for(int w=0; w<NUM_WORDS; ++w)
+				{
+					probeUnion[w] |= values[w];
+				}
+			}
+			undo(mark);
+		}
+		return found;
+	}
+	
+	/**
+	 * @brief Eliminates the values that aren't in probeUnion (excluded by every candidate of the probed square), and propagates.
+	 * It includes the candidates of the probed square that failed, as they don't leave any value.
+	 * @return Number of values eliminated, -1 if a contradiction was found.
+	 */
+	private int eliminate_excluded()
+	{
+		if(reasons != null)
+		{
+			set_cause_levels(depth);
+		}
+		int eliminated = 0;
+		for(int w=0; w<NUM_WORDS; ++w)
+		{
+			long excluded = values[w] & ~probeUnion[w];
+			while(excluded != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(excluded);
+				excluded &= excluded - 1;
+				if(!eliminate(4*w + (bit >> 4), bit & 0xF))
+				{
+					clear_queue();
+					return -1;
+				}
+				++eliminated;
+			}
+		}
+		probeEliminations += eliminated;
+		return eliminated == 0 || propagate() ? eliminated : -1;
+	}
+	
+	/**
+	 * @brief Probing of the candidates of one square, on a copy of the values of this solver.
+	 * The copy is made on a solver taken from idleProbers (or a new one), that is given back when finished.
+	 */
+	private final class ProbeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int square; /**< Square to probe. */
+		private final long[] union = new long[NUM_WORDS]; /**< Union of the values left by the successful candidates. */
+		private boolean failed; /**< Every candidate led to a contradiction. */
+		private long probes; /**< Number of candidates probed. */
+		
+		@Override
+		protected void compute()
+		{
+			SudokuHex prober = idleProbers.poll();
+			if(prober == null)
+			{
+				prober = new SudokuHex(strategy);
+			}
+			prober.load(SudokuHex.this);
+			prober.numberProbes = 0;
+			failed = !prober.probe_square(square);
+			System.arraycopy(prober.probeUnion, 0, union, 0, NUM_WORDS);
+			probes = prober.numberProbes;
+			idleProbers.offer(prober);
+		}
+	}
+	
+	/**
+	 * @brief Orders the possible values of a square with the LCV (Least Constrainted Value) heuristic.
+	 * For each possible value, it's checked how many times it appears in the square's peers,
+	 * The value that appears the least is chosen.
+	 * This works because the value chosen will minimize the constraints imposed over other squares,
+	 * thus, increasing the chances of generating a valid solution. 
+	 * The appearances of every value are counted at once, in a single pass over the peers: the masks of the peers
+	 * are added to 6 bit planes (a 16 lane counter up to 63, bit k of the counter of value v is bit v of plane k).
+	 * @param s Index of the square.
+	 * @param offset Position of frameValues where the ordered values will be written.
+	 * @return Number of values written.
+	 */
+	private int order_values(int s, int offset)
+	{
+		int temp = get_square(values, s);
+		int plane0 = 0, plane1 = 0, plane2 = 0, plane3 = 0, plane4 = 0, plane5 = 0;
+		for(int peer=NUM_PEERS*s; peer<NUM_PEERS*(s+1); ++peer)
+		{
+			// Add the peer's values (only the ones that the square can take) to the counters, propagating the carry.
+			int carry = get_square(values, peers[peer]) & temp;
+			int next = plane0 & carry; plane0 ^= carry; carry = next;
+			next = plane1 & carry; plane1 ^= carry; carry = next;
+			next = plane2 & carry; plane2 ^= carry; carry = next;
+			next = plane3 & carry; plane3 ^= carry; carry = next;
+			next = plane4 & carry; plane4 ^= carry; carry = next;
+			plane5 ^= carry;
+		}
+		
+		int n = 0;
+		while(temp != 0)
+		{
+			int v = Integer.numberOfTrailingZeros(temp);
+			temp &= temp - 1;
+			int j = ((plane0 >>> v) & 1) | (((plane1 >>> v) & 1) << 1) | (((plane2 >>> v) & 1) << 2)
+					| (((plane3 >>> v) & 1) << 3) | (((plane4 >>> v) & 1) << 4) | (((plane5 >>> v) & 1) << 5);
+			if(strategy.restarts)
+			{
+				// The values that appear the same times are ordered at random.
+				j = (j << 8) | random_int(256);
+			}
+			// Insert it after the values that appear less or the same times (stable insertion sort).
+			int i = n++;
+			while(i > 0 && lcvCounts[i-1] > j)
+			{
+				lcvCounts[i] = lcvCounts[i-1];
+				frameValues[offset + i] = frameValues[offset + i - 1];
+				--i;
+			}
+			lcvCounts[i] = j;
+			frameValues[offset + i] = v;
+		}
+		return n;
+	}
+	
+	/**
+	 * @brief Changes the mask of a square, saving the previous one in the trail.
+	 * @param s Index of the square.
+	 * @param square New 16 bit mask of possible values.
+	 */
+	private void update_square(int s, int square)
+	{
+		int previous = get_square(values, s);
+		trail[trailSize++] = (s << 16) | previous;
+		set_square(values, s, square);
+		reindex_square(s, previous, square);
+	}
+	
+	/**
+	 * @brief Updates the indexes of a square after its mask changed.
+	 * The square is moved to the bucket of its new number of possible values, and the values that it lost
+	 * (or recovered) are cleared from (or set in) the unit positions of its three units.
+	 * @param s Index of the square.
+	 * @param previous Previous 16 bit mask of possible values (0 if the square is being indexed for the first time).
+	 * @param square New 16 bit mask of possible values.
+	 */
+	private void reindex_square(int s, int previous, int square)
+	{
+		if(previous != 0)
+		{
+			buckets[4*Integer.bitCount(previous) + (s >> 6)] &= ~(1L << s);
+		}
+		buckets[4*Integer.bitCount(square) + (s >> 6)] |= 1L << s;
+		
+		int changed = previous ^ square;
+		while(changed != 0)
+		{
+			int v = Integer.numberOfTrailingZeros(changed);
+			changed &= changed - 1;
+			for(int unit=NUM_UNITS*s; unit<NUM_UNITS*(s+1); ++unit)
+			{
+				// unitPositions[16*u + v] toggles the bit of the square's position, it's cleared if v was lost and set if it was recovered.
+				unitPositions[GRID_SIZE*squareUnits[unit] + v] ^= 1 << squarePositions[unit];
+			}
+			digitBoards[4*v + (s >> 6)] ^= 1L << s;
+		}
+	}
+	
+	/**
+	 * @brief Undoes every change made to the values since the trail had the given size.
+	 * @param mark Size of the trail to go back to.
+	 */
+	private void undo(int mark)
+	{
+		while(trailSize > mark)
+		{
+			int entry = trail[--trailSize];
+			int s = entry >>> 16;
+			reindex_square(s, get_square(values, s), entry & ALL_VALUES);
+			set_square(values, s, entry & ALL_VALUES);
+		}
+	}
+	
+	/**
+	 * @brief Assigns a value to a square, eliminating all the other possible values, and propagates the restrictions.
+	 * @param s Index of the square.
+	 * @param value Value (0-15) to assign.
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean assign(int s, int value)
+	{
+		// Eliminate all values different to value
+		// If they all succeed, propagate the eliminations and return true
+		// otherwise, return false
+		int valuesToRemove = get_square(values, s) & ~(1 << value);
+		
+		//System.out.println("Assigning "+value+" to "+s+" (its values are "+square_to_string(get_square(values, s))+")");
+		
+		while(valuesToRemove != 0)
+		{
+			int v = Integer.numberOfTrailingZeros(valuesToRemove);
+			valuesToRemove &= valuesToRemove - 1;
+			if(!eliminate(s, v))
+			{
+				clear_queue();
+				return false;
+			}
+		}
+		return propagate();
+	}
+	
+	/**
+	 * @brief Eliminates a possible value from a square, queuing the elimination to be propagated.
+	 * @param s Index of the square.
+	 * @param value Value (0-15) to eliminate.
+	 * @return false if a contradiction was found (the value was the last one), true otherwise.
+	 */
+	private boolean eliminate(int s, int value)
+	{
+		int square = get_square(values, s);
+		if((square & (1 << value)) == 0)
+		{
+			// Already eliminated
+			return true;
+		}
+		
+		// Eliminate the value
+		int temp = square & ~(1 << value);
+		if(temp == 0)
+		{
+			// Contradiction, attempting to remove the last value!
+			if(reasons != null)
+			{
+				// It's caused by this elimination and by the ones of the other values.
+				System.arraycopy(cause, 0, conflict, 0, 4);
+				add_reasons(conflict, 0, s, ~square & ALL_VALUES);
+			}
+			return false;
+		}
+		update_square(s, temp);
+		if(reasons != null)
+		{
+			System.arraycopy(cause, 0, reasons, 4*(GRID_SIZE*s + value), 4);
+		}
+		
+		// The consequences of the elimination are checked later by propagate, remembering if the
+		// square was left with only one possible value.
+		int single = (temp & (temp - 1)) == 0 ? 1 : 0;
+		queue[queueTail++] = (s << 5) | (single << 4) | value;
+		long units = (1L << squareUnits[NUM_UNITS*s]) | (1L << squareUnits[NUM_UNITS*s + 1]) | (1L << squareUnits[NUM_UNITS*s + 2]);
+		dirtyUnits |= units;
+		lockedUnits |= units;
+		subsetUnits |= units;
+		fishValues |= 1 << value;
+		allDiffUnits |= units;
+		return true;
+	}
+	
+	/**
+	 * @brief Propagates the queued eliminations until no more restrictions can be inferred.
+	 * The queue works as a worklist, so the propagation doesn't recurse and doesn't allocate memory.
+	 * @return false if a contradiction was found, true otherwise.
+	 * @post The queue will be empty.
+	 */
+	private boolean propagate()
+	{
+		do
+		{
+			while(queueHead < queueTail)
+			{
+				if(strategy.consistencyCheck && dirtyUnits != 0)
+				{
+					if(reasons != null)
+					{
+						set_cause_levels(depth);
+					}
+					if(!check_consistency())
+					{
+						if(reasons != null)
+						{
+							System.arraycopy(cause, 0, conflict, 0, 4);
+						}
+						clear_queue();
+						return false;
+					}
+				}
+				int event = queue[queueHead++];
+				int s = event >>> 5;
+				int value = event & 0xF;
+			
+				// If when the value was eliminated there was only one possible value left for this square
+				// (same effect as assigning the value to this square)...
+				// propagate the restrictions, eliminating this new found value through the square's peers
+				// If any of the eliminations returns false, it means it couldn't be done, and we have to propagate the failure
+				// up in the tree and backtrack.
+				if((event & 0x10) != 0)
+				{
+					int remaining = Integer.numberOfTrailingZeros(get_square(values, s));
+					if(reasons != null)
+					{
+						// The value is removed from the peers because the other values were removed from the square.
+						Arrays.fill(cause, 0);
+						add_reasons(cause, 0, s, ALL_VALUES & ~(1 << remaining));
+					}
+					if(strategy.vectorized)
+					{
+						// Only the squares of the units that still have the value are visited.
+						for(int unit=NUM_UNITS*s; unit<NUM_UNITS*(s+1); ++unit)
+						{
+							int u = squareUnits[unit];
+							int hits = unit_hits(u, remaining) & ~(1 << squarePositions[unit]);
+							while(hits != 0)
+							{
+								int position = Integer.numberOfTrailingZeros(hits);
+								hits &= hits - 1;
+								if(!eliminate(unitSquares[GRID_SIZE*u + position], remaining))
+								{
+									++unitFailures[u];
+									clear_queue();
+									return false;
+								}
+							}
+						}
+					}
+					else
+					{
+						for(int peer=NUM_PEERS*s; peer<NUM_PEERS*(s+1); ++peer)
+						{
+							if(!eliminate(peers[peer], remaining))
+							{
+								++unitFailures[shared_unit(s, peers[peer])];
+								clear_queue();
+								return false;
+							}
+						}
+					}
+				}
+			
+				// After that, we have to check each unit of the square, and get the positions of the unit with the value (the one eliminated)
+				// If there's no square that has that value as a possible one, then the choice of eliminating this value was wrong
+				// in the first place! return false.
+				// If there's only one place left for it, the value is assigned to that square.
+				// If there's more than one place left for the value, then there's a choice we may want to backtrack in case it
+				// failed, better leave it alone for now.
+				for(int unit=NUM_UNITS*s; unit<NUM_UNITS*(s+1); ++unit)
+				{
+					int u = squareUnits[unit];
+					int positions = unitPositions[GRID_SIZE*u + value];
+					if(positions == 0)
+					{
+						++unitFailures[u];
+						if(reasons != null)
+						{
+							// It's caused by the eliminations of the value from every square of the unit.
+							Arrays.fill(conflict, 0);
+							for(int i=GRID_SIZE*u; i<GRID_SIZE*(u+1); ++i)
+							{
+								add_reasons(conflict, 0, unitSquares[i], 1 << value);
+							}
+						}
+						clear_queue();
+						return false;
+					}
+					else if((positions & (positions - 1)) == 0)
+					{
+						int found = unitSquares[GRID_SIZE*u + Integer.numberOfTrailingZeros(positions)];
+						if(reasons != null)
+						{
+							// The other values are removed from the square because the value was removed from the rest of the unit.
+							Arrays.fill(cause, 0);
+							for(int i=GRID_SIZE*u; i<GRID_SIZE*(u+1); ++i)
+							{
+								if(unitSquares[i] != found)
+								{
+									add_reasons(cause, 0, unitSquares[i], 1 << value);
+								}
+							}
+						}
+						int valuesToRemove = get_square(values, found) & ~(1 << value);
+						while(valuesToRemove != 0)
+						{
+							int v = Integer.numberOfTrailingZeros(valuesToRemove);
+							valuesToRemove &= valuesToRemove - 1;
+							if(!eliminate(found, v))
+							{
+								clear_queue();
+								return false;
+							}
+						}
+					}
+					// Otherwise there's more than one option, no choice is made here, that's the backtracking search's responsibility.
+				}
+			}
+			
+			// The singles are at their fixpoint, now the rules that reason on whole units are applied.
+			// They may queue new eliminations, and then the singles are propagated again.
+			if(reasons != null)
+			{
+				// These rules don't explain their eliminations, every decision is blamed.
+				set_cause_levels(depth);
+			}
+			if(!propagate_units())
+			{
+				if(reasons != null)
+				{
+					System.arraycopy(cause, 0, conflict, 0, 4);
+				}
+				clear_queue();
+				return false;
+			}
+		}
+		while(queueHead < queueTail);
+		clear_queue();
+		return true;
+	}
+	
+	/**
+	 * @brief Discards the pending eliminations (after a contradiction, or once they are propagated).
+	 */
+	private void clear_queue()
+	{
+		queueHead = queueTail = 0;
+		dirtyUnits = 0;
+		lockedUnits = 0;
+		subsetUnits = 0;
+		fishValues = 0;
+		allDiffUnits = 0;
+	}
+	
+	/**
+	 * @brief Applies the rules that reason on whole units to the units changed since their last application.
+	 * Each rule stops as soon as it queues eliminations, so that the cheaper singles are propagated first.
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean propagate_units()
+	{
+		if(chainLength > 1)
+		{
+			if(!apply_chain())
+			{
+				return false;
+			}
+			if(queueHead < queueTail)
+			{
+				return true;
+			}
+		}
+		if(strategy.lockedCandidates && lockedUnits != 0)
+		{
+			if(!apply_locked_candidates())
+			{
+				return false;
+			}
+			if(queueHead < queueTail)
+			{
+				return true;
+			}
+		}
+		if(strategy.nakedSubsets >= 2 || strategy.hiddenSubsets >= 2)
+		{
+			while(subsetUnits != 0 && queueHead == queueTail)
+			{
+				int u = Long.numberOfTrailingZeros(subsetUnits);
+				subsetUnits &= subsetUnits - 1;
+				if(!apply_subsets(u))
+				{
+					++unitFailures[u];
+					return false;
+				}
+			}
+		}
+		if(strategy.fish >= 2)
+		{
+			while(fishValues != 0 && queueHead == queueTail)
+			{
+				int v = Integer.numberOfTrailingZeros(fishValues);
+				fishValues &= fishValues - 1;
+				if(!apply_fish(v))
+				{
+					return false;
+				}
+			}
+		}
+		if(strategy.allDiffFiltering)
+		{
+			while(allDiffUnits != 0 && queueHead == queueTail)
+			{
+				int u = Long.numberOfTrailingZeros(allDiffUnits);
+				allDiffUnits &= allDiffUnits - 1;
+				if(!filter_all_diff(u))
+				{
+					++unitFailures[u];
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @brief Applies the symmetry breaking of the counting: the free values must be in increasing order in the chain unit.
+	 * Each value must be after the first position left for the previous one, and before the last position left
+	 * for the next one. The positions of the values in the unit are masks, so they are bounds of bit masks.
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean apply_chain()
+	{
+		int low = -1;
+		for(int i=0; i<chainLength; ++i)
+		{
+			int positions = unitPositions[GRID_SIZE*chainUnit + chainValues[i]];
+			int forbidden = positions & ((1 << (low + 1)) - 1);
+			if(forbidden == positions || !eliminate_positions(chainUnit, chainValues[i], forbidden))
+			{
+				return false;
+			}
+			low = Integer.numberOfTrailingZeros(positions & ~forbidden);
+		}
+		int high = GRID_SIZE;
+		for(int i=chainLength-1; i>=0; --i)
+		{
+			int positions = unitPositions[GRID_SIZE*chainUnit + chainValues[i]];
+			int forbidden = positions & ~((1 << high) - 1);
+			if(forbidden == positions || !eliminate_positions(chainUnit, chainValues[i], forbidden))
+			{
+				return false;
+			}
+			high = 31 - Integer.numberOfLeadingZeros(positions & ~forbidden);
+		}
+		return true;
+	}
+	
+	/**
+	 * @brief Eliminates a value from some positions of a unit.
+	 * @param u Index of the unit.
+	 * @param value Value (0-15) to eliminate.
+	 * @param positions Mask of the positions of the unit.
+	 * @return false if a contradiction was found, true otherwise.
+	 */
+	private boolean eliminate_positions(int u, int value, int positions)
 	{
-		template = template.toUpperCase();
-		template = template.replace(" ", "");
-		template = template.replace("\t", "");
-		template = template.replace("\n", "");
-		template = template.replace("-", ".");
-		this.template = template;
+		while(positions != 0)
+		{
+			int position = Integer.numberOfTrailingZeros(positions);
+			positions &= positions - 1;
+			if(!eliminate(unitSquares[GRID_SIZE*u + position], value))
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/**
-	 * @brief Initializes the dictionaries that will represent the units and peers of a square.
+	 * @brief Applies the box/line interactions (locked candidates) to the intersections of the units changed since the last pass.
+	 * Pointing: if the positions of a value in a box are all inside its intersection with a line, the value
+	 * must be in the intersection, so it's eliminated from the rest of the line. Claiming: the same, from a line
+	 * to a box. With the unit positions, both tests are a mask inclusion for the 16 values of the intersection.
+	 * @return false if a contradiction was found, true otherwise.
 	 */
-	private void initialize_units_and_peers()
+	private boolean apply_locked_candidates()
 	{
-		units = new int[GRID_SIZE][GRID_SIZE][NUM_UNITS][GRID_SIZE][2];
-		peers = new int[GRID_SIZE][GRID_SIZE][NUM_PEERS][2];
-		
-		for(int r=0; r<GRID_SIZE; ++r)
+		long units = lockedUnits;
+		lockedUnits = 0;
+		for(int i=0; i<NUM_INTERSECTIONS; ++i)
 		{
-			for(int c=0; c<GRID_SIZE; ++c)
+			int boxUnit = intersectionUnits[2*i];
+			int lineUnit = intersectionUnits[2*i + 1];
+			if((units & ((1L << boxUnit) | (1L << lineUnit))) == 0)
+			{
+				continue;
+			}
+			int boxMask = intersectionMasks[2*i];
+			int lineMask = intersectionMasks[2*i + 1];
+			for(int v=0; v<GRID_SIZE; ++v)
 			{
-				// For each square...
-				int peer = 0;
-				int unit1Item = 0;
-				int unit2Item = 0;
-				int unit3Item = 0;
-				for(int k=0; k<GRID_SIZE; ++k)
+				int inBox = unitPositions[GRID_SIZE*boxUnit + v];
+				int inLine = unitPositions[GRID_SIZE*lineUnit + v];
+				int toRemove = 0;
+				int unit = 0;
+				if(inBox == 0 || inLine == 0)
 				{
-					// Initialize units
-					// Add the row
-					units[r][c][0][unit1Item][0] = r;
-					units[r][c][0][unit1Item][1] = k;
-					++unit1Item;
-					// Add the column
-					units[r][c][1][unit2Item][0] = k;
-					units[r][c][1][unit2Item][1] = c;
-					++unit2Item;
-					// Add the box
-					int superRow = (int)r/4;
-					int superColumn = (int)c/4;
-					int boxRow = (int)k/4;
-					int boxColumn = k%4;
-					units[r][c][2][unit3Item][0] = 4*superRow + boxRow;
-					units[r][c][2][unit3Item][1] = 4*superColumn + boxColumn;
-					++unit3Item;
-					
-					// Initialize peers
-					// (Same as the units, but without duplicates, and without the square [i,j])
-					// Add the row
-					if(k!=c)
-					{
-						peers[r][c][peer][0] = r;
-						peers[r][c][peer][1] = k;
-						++peer;
-					}
-					// Add the column
-					if(k!=r)
-					{
-						peers[r][c][peer][0] = k;
-						peers[r][c][peer][1] = c;
-						++peer;
-					}
-					// Add the box
-					if( (4*superRow + boxRow != r) && (4*superColumn + boxColumn != c) )
+					// Dead unit, the singles will fail on it
+					continue;
+				}
+				if((inBox & ~boxMask) == 0 && (inLine & ~lineMask) != 0)
+				{
+					// Pointing, eliminate from the rest of the line
+					toRemove = inLine & ~lineMask;
+					unit = lineUnit;
+				}
+				else if((inLine & ~lineMask) == 0 && (inBox & ~boxMask) != 0)
+				{
+					// Claiming, eliminate from the rest of the box
+					toRemove = inBox & ~boxMask;
+					unit = boxUnit;
+				}
+				if(toRemove != 0)
+				{
+					++lockedCandidatesHits;
+					while(toRemove != 0)
 					{
-						peers[r][c][peer][0] = 4*superRow + boxRow;
-						peers[r][c][peer][1] = 4*superColumn + boxColumn;
-						++peer;
+						int position = Integer.numberOfTrailingZeros(toRemove);
+						toRemove &= toRemove - 1;
+						if(!eliminate(unitSquares[GRID_SIZE*unit + position], v))
+						{
+							return false;
+						}
 					}
 				}
 			}
 		}
+		return true;
 	}
 	
-
 	/**
-	 * @brief Initializes the dictionary of values corresponding to a square.
-	 * Each square has a set of possible values. If the correct value is known, then it will be only one.
-	 * If the correct value isn't known, then the set will have all the possible values.
-	 * @post Each assigned square will have only its assigned value.
-	 * @post Each unassigned square from the template will have all possible values.
+	 * @brief Looks for naked and hidden subsets in a unit, eliminating the values they rule out.
+	 * A naked subset is a set of k squares with only k values altogether: those values can't be anywhere else
+	 * in the unit. A hidden subset is a set of k values with only k possible positions altogether: those
+	 * squares can't have any other value. Both are the same search over 16 masks (the squares' values, or the
+	 * values' positions), so they share find_subset. It stops at the first subset that eliminates something.
+	 * @param u Index of the unit.
+	 * @return false if a contradiction was found (k masks with less than k bits altogether), true otherwise.
 	 */
-	private void initialize_values()
+	private boolean apply_subsets(int u)
 	{
-		values = new String[16][16];
-		int templateIndex = 0;
-		String all_possible_values = "0123456789ABCDEF";
-		
-		for(int r=0; r<GRID_SIZE; ++r)
+		int base = GRID_SIZE*u;
+		for(int k=2; k<=Math.min(strategy.nakedSubsets, MAX_SUBSET); ++k)
 		{
-			for(int c=0; c<GRID_SIZE; ++c)
+			for(int i=0; i<GRID_SIZE; ++i)
 			{
-				// The value from the template will be read, and it will be added to the values set.
-				// If the value read is the empty symbol (. or -) then all the possible values will be added to the set.
-				if(template.charAt(templateIndex) == '.')
-				{
-					// Free square, add all the possible values
-					values[r][c] = all_possible_values;
-				}
-				else
+				subsetMasks[i] = get_square(values, unitSquares[base + i]);
+			}
+			int subset = find_subset(k, candidates(k), 0, 0, 0);
+			if(subset < 0)
+			{
+				return false;
+			}
+			if(subset > 0)
+			{
+				++nakedSubsetHits[k];
+				// The values of the subset are eliminated from the other squares of the unit
+				int union = subset_union(subset);
+				for(int i=0; i<GRID_SIZE; ++i)
 				{
-					// Established square, add only the read value
-					String single_value = "" + template.charAt(templateIndex);
-					values[r][c] = single_value;
+					int valuesToRemove = (subset & (1 << i)) == 0 ? subsetMasks[i] & union : 0;
+					while(valuesToRemove != 0)
+					{
+						int v = Integer.numberOfTrailingZeros(valuesToRemove);
+						valuesToRemove &= valuesToRemove - 1;
+						if(!eliminate(unitSquares[base + i], v))
+						{
+							return false;
+						}
+					}
 				}
-				++templateIndex;
+				return true;
 			}
 		}
-		
-		// Now that the values are set, the data structure must be taken to a consistent state, hence later,
-		// when propagating the restrictions and backtracking, the decisions made are also consistent.
-		for (int r=0; r<GRID_SIZE; ++r)
+		for(int k=2; k<=Math.min(strategy.hiddenSubsets, MAX_SUBSET); ++k)
 		{
-			for (int c=0; c<GRID_SIZE; ++c)
+			System.arraycopy(unitPositions, base, subsetMasks, 0, GRID_SIZE);
+			int subset = find_subset(k, candidates(k), 0, 0, 0);
+			if(subset < 0)
+			{
+				return false;
+			}
+			if(subset > 0)
 			{
-				// For each square, if it has only one possible value (if it is set), remove the value from its peers.
-				if(values[r][c].length() == 1)
+				++hiddenSubsetHits[k];
+				// The other values are eliminated from the squares of the subset's positions
+				int union = subset_union(subset);
+				for(int v=0; v<GRID_SIZE; ++v)
 				{
-					for(int peer=0; peer<NUM_PEERS; ++peer)
+					int positions = (subset & (1 << v)) == 0 ? subsetMasks[v] & union : 0;
+					while(positions != 0)
 					{
-						int peerRow = peers[r][c][peer][0];
-						int peerColumn = peers[r][c][peer][1];
-						values[peerRow][peerColumn] = values[peerRow][peerColumn].replace(values[r][c], "");
+						int i = Integer.numberOfTrailingZeros(positions);
+						positions &= positions - 1;
+						if(!eliminate(unitSquares[base + i], v))
+						{
+							return false;
+						}
 					}
 				}
+				return true;
 			}
 		}
+		return true;
 	}
 	
 	/**
-	 * @brief Solves the sudoku and changes the values content to a solved state.
-	 * @post The values will be changed to a state belonging to the solution set. If no solution was found, they will be null.
+	 * @brief Returns the indexes of subsetMasks that can be part of a subset of size k (masks with 2 to k bits).
+	 * @param k Size of the subset.
+	 * @return Set of candidate indexes.
 	 */
-	public void solve()
+	private int candidates(int k)
 	{
-		this.values = search(this.values);
-		// If the values object returned is a null object, there's no solution for the sudoku
+		int candidates = 0;
+		for(int i=0; i<GRID_SIZE; ++i)
+		{
+			int size = Integer.bitCount(subsetMasks[i]);
+			if(size >= 2 && size <= k)
+			{
+				candidates |= 1 << i;
+			}
+		}
+		return candidates;
 	}
 	
 	/**
-	 * @brief
-	 * @param
-	 * @return
+	 * @brief Returns the union of the masks of a set of indexes of subsetMasks.
+	 * @param subset Set of indexes.
+	 * @return Union of their masks.
 	 */
-	private String[][] search(String[][] values)
+	private int subset_union(int subset)
 	{
-		if(values == null)
+		int union = 0;
+		while(subset != 0)
 		{
-			// Already failed...
-			return null;
+			union |= subsetMasks[Integer.numberOfTrailingZeros(subset)];
+			subset &= subset - 1;
 		}
-		// Check goal condition (if the sudoku is solved) 
-		// and keep track of the node that minimizes the branching factor (the square with minimal value choices (different from zero)).
-		boolean solved = true;
-		int bestSquareRow = 0;
-		int bestSquareColumn = 0;
-		
-		for (int r=0; r<GRID_SIZE; ++r)
+		return union;
+	}
+	
+	/**
+	 * @brief Looks for k indexes of subsetMasks whose masks have k bits altogether, and that rule out some bit of
+	 * another mask of the unit. The recursion is bounded by k (at most 4).
+	 * @param k Size of the subset.
+	 * @param candidates Indexes that can be added to the subset.
+	 * @param start First index that can be added (the subset is built in increasing order).
+	 * @param subset Indexes already chosen.
+	 * @param union Union of the masks already chosen.
+	 * @return The subset found, 0 if there isn't any, or -1 if k masks have less than k bits altogether.
+	 */
+	private int find_subset(int k, int candidates, int start, int subset, int union)
+	{
+		if(Integer.bitCount(subset) == k)
 		{
-			for (int c=0; c<GRID_SIZE; ++c)
+			if(Integer.bitCount(union) < k)
 			{
-				if(values[r][c].length()==0)
-				{
-					// Contradiction! The test square is invalid!
-					return null;
-				}
-				else
+				return -1;
+			}
+			for(int j=0; j<GRID_SIZE; ++j)
+			{
+				if((subset & (1 << j)) == 0 && (subsetMasks[j] & union) != 0)
 				{
-					// Update the goal condition flag.
-					solved &= (values[r][c].length() == 1);
-					
-					// Update the best square.
-					if(values[bestSquareRow][bestSquareColumn].length() == 1)
-					{
-						// The best square is useless (only one possible value, no decision to make)
-						// Pick the first one that doesn't have only one value.
-						if(values[r][c].length() > 1)
-						{
-							bestSquareRow = r;
-							bestSquareColumn = c;
-						}
-					}
-					else if(values[r][c].length() < values[bestSquareRow][bestSquareColumn].length() && values[r][c].length() > 1)
-					{
-						// Assign the test square if it's better (already tested that it's valid).
-						bestSquareRow = r;
-						bestSquareColumn = c;
-					}
+					return subset;
 				}
 			}
+			return 0;
 		}
-		
-		//System.out.println("Found best square, ["+bestSquareRow+","+bestSquareColumn+"] with degree "+bestSquareDegree);
-		
-		if(solved)
-		{
-			// Solved!
-			return values;
-		}
-		else
+		int remaining = candidates & ~((1 << start) - 1);
+		while(Integer.bitCount(remaining) >= k - Integer.bitCount(subset))
 		{
-			// Not solved, pick the tree with least branches from our forest of solution trees.
-			// The possible values for the square are chosen using the LCV (Least Constrainted Value)
-			// For each possible value, it's checked how many times it appears in the square's peers,
-			// The value that appears the least is chosen.
-			// This works because the value chosen will minimize the constraints imposed over other squares,
-			// thus, increasing the chances of generating a valid solution. 
-			String[][] originalValues = copy_values(values);
-			
-			String temp = originalValues[bestSquareRow][bestSquareColumn];
-			class Pair
+			int i = Integer.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			int newUnion = union | subsetMasks[i];
+			if(Integer.bitCount(newUnion) <= k)
 			{
-				char c;
-				int i;
-				Pair(char c, int i)
+				int found = find_subset(k, candidates, i + 1, subset | (1 << i), newUnion);
+				if(found != 0)
 				{
-					this.c = c;
-					this.i = i;
+					return found;
 				}
-			};
-			
-			Vector<Pair> unorderedValues = new Vector<Pair>();
-			for(int i=0; i<temp.length(); ++i)
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * @brief Looks for fish (X-Wing, Swordfish, Jellyfish) of a value, eliminating the value where they rule it out.
+	 * If in n base rows the value can only be in n columns altogether, those n rows take the value of those
+	 * n columns, so it's eliminated from the rest of the columns (and the same swapping rows and columns).
+	 * Finding the base lines is the naked subset search over the projections of the value on the lines, and
+	 * the squares to eliminate are the value's bitboard masked with the cover lines minus the base lines.
+	 * @param v Value.
+	 * @return false if a contradiction was found (n lines with less than n places altogether), true otherwise.
+	 */
+	private boolean apply_fish(int v)
+	{
+		for(int n=2; n<=Math.min(strategy.fish, MAX_SUBSET); ++n)
+		{
+			// Base rows, cover columns. The projection of a row is 16 bits of the bitboard.
+			for(int r=0; r<GRID_SIZE; ++r)
 			{
-				int j = 0;
-				for(int peer=0; peer<NUM_PEERS; ++peer)
-				{
-					if(values[peers[bestSquareRow][bestSquareColumn][peer][0]][peers[bestSquareRow][bestSquareColumn][peer][1]].contains(""+temp.charAt(i)))
-					{
-						++j;
-					}
-				}
-				unorderedValues.add(new Pair(temp.charAt(i),j));
+				subsetMasks[r] = (int)(digitBoards[4*v + (r >> 2)] >>> ((r & 3) << 4)) & ALL_VALUES;
 			}
-			String orderedValues = "";
-			for(int j=unorderedValues.size(); j>0; --j)
+			int base = find_subset(n, candidates(n), 0, 0, 0);
+			if(base < 0)
 			{
-				int index = 0;
-				for(int i=0; i<unorderedValues.size(); ++i)
-				{
-					if(unorderedValues.get(i).i < unorderedValues.get(index).i)
-					{
-						index = i;
-					}
-				}
-				orderedValues += unorderedValues.get(index).c;
-				unorderedValues.remove(index);
+				return false;
+			}
+			if(base > 0)
+			{
+				++fishHits[n];
+				return eliminate_fish(v, base, subset_union(base), true);
 			}
 			
-			for(int i = 0; i < orderedValues.length(); i++)
+			// Base columns, cover rows. The projection of a column are the positions of the value in it.
+			for(int c=0; c<GRID_SIZE; ++c)
 			{
-				// Assign it to the square
-				values = assign(values, bestSquareRow, bestSquareColumn, orderedValues.charAt(i));
-				// Search depth-first
-				String[][] obtainedValues = search(values);
-				// If the value returned is a solution (not a null object), solved!
-				if(obtainedValues != null)
-				{
-					return obtainedValues;
-				}
-				//numberBacktracks++;
-				// If the value returned is null, the sub-branch doesn't have a solution, try the next value!
-				// Before trying another value, the original values must be restored.
-				values = copy_values(originalValues);
+				subsetMasks[c] = unitPositions[GRID_SIZE*(GRID_SIZE + c) + v];
+			}
+			base = find_subset(n, candidates(n), 0, 0, 0);
+			if(base < 0)
+			{
+				return false;
+			}
+			if(base > 0)
+			{
+				++fishHits[n];
+				return eliminate_fish(v, subset_union(base), base, false);
 			}
-			// If after checking all the values, none provides a solution, this branch doesn't have a solution, backtrack!
-			return null;
 		}
+		return true;
 	}
 	
 	/**
-	 * @brief Returns a copy of the matrix of values passed as an argument.
-	 * @param values Matrix of Strings that contain the values of each square.
-	 * @return Copy of the Matrix of values.
+	 * @brief Eliminates a value from the squares of some columns outside some rows, or of some rows outside some columns.
+	 * @param v Value.
+	 * @param rows Set of rows: the base rows (when eliminating from the columns) or the cover rows.
+	 * @param columns Set of columns: the cover columns (when eliminating outside the rows) or the base columns.
+	 * @param rowsAreBase true to eliminate from the columns outside the rows, false to eliminate from the rows outside the columns.
+	 * @return false if a contradiction was found, true otherwise.
 	 */
-	private String[][] copy_values(String[][] values)
+	private boolean eliminate_fish(int v, int rows, int columns, boolean rowsAreBase)
 	{
-		String [][] copy = new String[GRID_SIZE][GRID_SIZE];
-		for (int r=0; r<GRID_SIZE; ++r)
+		for(int k=0; k<4; ++k)
 		{
-			for (int c=0; c<GRID_SIZE; ++c)
+			// Each long of the bitboard has the rows 4k to 4k+3. The set of columns is repeated in its 4 lanes,
+			// and each row of the set fills its lane.
+			int nibble = (rows >>> (4*k)) & 0xF;
+			long rowsMask = ((long)(nibble & 1) | ((long)(nibble & 2) << 15) | ((long)(nibble & 4) << 30) | ((long)(nibble & 8) << 45)) * ALL_VALUES;
+			long columnsMask = (long)columns * LANES;
+			long targets = digitBoards[4*v + k] & (rowsAreBase ? columnsMask & ~rowsMask : rowsMask & ~columnsMask);
+			while(targets != 0)
 			{
-				// Strings are immutable objects, there's no need to deep-copy them.
-				// Copying the references will do.
-				copy[r][c] = values[r][c];
+				int s = 64*k + Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+				if(!eliminate(s, v))
+				{
+					return false;
+				}
 			}
 		}
-		return copy;
+		return true;
 	}
 	
 	/**
-	 * @brief
-	 * @param values
-	 * @param square
-	 * @param value
-	 * @return
+	 * @brief Makes the AllDiff constraint of a unit generalized arc consistent (Regin's filtering).
+	 * The positions of the unit and the 16 values form a bipartite graph, with an edge for each possible value
+	 * of each square. A value can be kept in a square only if the edge belongs to some perfect matching:
+	 * either it's in the matching found, or it closes an alternating cycle. Taking the value v of the
+	 * position j from the position i is an arc i->j, and the edge (i,v) closes a cycle if i and j are in the
+	 * same strongly connected component. With 16 positions, reachability is a 16x16 bit matrix.
+	 * @param u Index of the unit.
+	 * @return false if the unit has no perfect matching (contradiction), true otherwise.
 	 */
-	private String[][] assign(String[][] values, int row, int column, char value)
+	private boolean filter_all_diff(int u)
 	{
-		// Eliminate all values different to value
-		// If they all succeed, return the values data structure
-		// otherwise, return null
-		String valuesToRemove = values[row][column].replace(""+value, "");
+		int base = GRID_SIZE*u;
+		
+		// Start from the previous matching, keeping the edges that are still possible.
+		int unmatched = 0;
+		matchedValues = 0;
+		for(int i=0; i<GRID_SIZE; ++i)
+		{
+			allDiffDomains[i] = get_square(values, unitSquares[base + i]);
+			int v = unitMatching[base + i];
+			if((allDiffDomains[i] & (1 << v)) != 0 && (matchedValues & (1 << v)) == 0)
+			{
+				matchedValues |= 1 << v;
+				valueOfPosition[i] = v;
+				positionOfValue[v] = i;
+			}
+			else
+			{
+				unmatched |= 1 << i;
+			}
+		}
+		
+		// Complete it with augmenting paths, if some position can't be matched, the unit can't be satisfied.
+		while(unmatched != 0)
+		{
+			int i = Integer.numberOfTrailingZeros(unmatched);
+			unmatched &= unmatched - 1;
+			augmentVisited = 0;
+			if(!augment(i))
+			{
+				return false;
+			}
+		}
+		for(int i=0; i<GRID_SIZE; ++i)
+		{
+			unitMatching[base + i] = (byte)valueOfPosition[i];
+		}
 		
-		//System.out.println("Assigning "+value+" to ["+row+","+column+"] (its values are "+values[row][column]+")");
+		// Arcs of the alternating graph, and their transitive closure (Warshall).
+		for(int i=0; i<GRID_SIZE; ++i)
+		{
+			int arcs = 1 << i;
+			int others = allDiffDomains[i] & ~(1 << valueOfPosition[i]);
+			while(others != 0)
+			{
+				int v = Integer.numberOfTrailingZeros(others);
+				others &= others - 1;
+				arcs |= 1 << positionOfValue[v];
+			}
+			reach[i] = arcs;
+		}
+		for(int k=0; k<GRID_SIZE; ++k)
+		{
+			for(int i=0; i<GRID_SIZE; ++i)
+			{
+				if((reach[i] & (1 << k)) != 0)
+				{
+					reach[i] |= reach[k];
+				}
+			}
+		}
 		
-		for(char v : valuesToRemove.toCharArray())
+		// Each square keeps the values matched to the positions of its strongly connected component.
+		for(int i=0; i<GRID_SIZE; ++i)
 		{
-			values = eliminate(values, row, column, v);
-			if(values == null)
+			int allowed = 0;
+			int reachable = reach[i];
+			while(reachable != 0)
+			{
+				int j = Integer.numberOfTrailingZeros(reachable);
+				reachable &= reachable - 1;
+				if((reach[j] & (1 << i)) != 0)
+				{
+					allowed |= 1 << valueOfPosition[j];
+				}
+			}
+			int valuesToRemove = allDiffDomains[i] & ~allowed;
+			while(valuesToRemove != 0)
 			{
-				return null;
+				int v = Integer.numberOfTrailingZeros(valuesToRemove);
+				valuesToRemove &= valuesToRemove - 1;
+				++numberAllDiffEliminations;
+				if(!eliminate(unitSquares[base + i], v))
+				{
+					return false;
+				}
 			}
 		}
-		return values;
+		return true;
 	}
 	
 	/**
-	 * @brief
-	 * @param values
-	 * @param square
-	 * @param value
-	 * @return
+	 * @brief Looks for an augmenting path from an unmatched position of the unit being filtered (Kuhn's algorithm).
+	 * The recursion is bounded by the 16 values, each one is visited once per path search.
+	 * @param i Position to match.
+	 * @return true if the position was matched (and the matching augmented), false otherwise.
 	 */
-	private String[][] eliminate(String[][] values, int row, int column, char value)
+	private boolean augment(int i)
 	{
-		if(!values[row][column].contains(""+value))
-		{
-			// Already eliminated
-			return values;
-		}
-		
-		// Eliminate the value
-		String temp = values[row][column].replace(""+value, "");
-		if(temp.isEmpty())
+		int free = allDiffDomains[i] & ~matchedValues;
+		if(free != 0)
 		{
-			// Contradiction, attempting to remove the last value!
-			return null;
+			int v = Integer.numberOfTrailingZeros(free);
+			matchedValues |= 1 << v;
+			valueOfPosition[i] = v;
+			positionOfValue[v] = i;
+			return true;
 		}
-		values[row][column] = temp;
-		
-		// If now that the value was eliminated, we find that there's only one possible value
-		// left for this square (same effect as assigning the value to this square)...
-		// propagate the restrictions, eliminating this new found value through the square's peers
-		// If any of the eliminations returns null, it means it couldn't be done, and we have to propagate the failure
-		// up in the tree and backtrack.
-		if(temp.length() == 1)
+		int candidates = allDiffDomains[i];
+		while(candidates != 0)
 		{
-			for(int peer=0; peer<NUM_PEERS; ++peer)
+			int v = Integer.numberOfTrailingZeros(candidates);
+			candidates &= candidates - 1;
+			if((augmentVisited & (1 << v)) == 0)
 			{
-				values = eliminate(values, peers[row][column][peer][0], peers[row][column][peer][1] , temp.charAt(0));
-				if(values == null)
+				augmentVisited |= 1 << v;
+				if(augment(positionOfValue[v]))
 				{
-					return null;
+					valueOfPosition[i] = v;
+					positionOfValue[v] = i;
+					return true;
 				}
 			}
 		}
-		
-		// After that, we have to check the units of the square, and get all the squares with the value (the one passed in the function)
-		// If there's no square that has that value as a possible one, then the choice of eliminating this value was wrong
-		// in the first place! return null.
-		// If there's only one place left for it, assign is called and eliminate returns the assignation's results.
-		// If there's more than one place left for the value, then there's a choice we may want to backtrack in case it
-		// failed, better leave it alone for now.
-		
-		Vector<int[]> toCheck = new Vector<int[]>();
-		
-		for(int unit=0; unit<NUM_UNITS; ++unit)
+		return false;
+	}
+	
+	/**
+	 * @brief Checks the AllDiff consistency of the units changed since the last check.
+	 * Sudoku is declared as an AllDiff constraint. We can check in advance
+	 * for a valid solution by doing the following simple form of
+	 * inconsistency detection: if there are M variables involved in the
+	 * constraint and if they have N possible distinct values altogether,
+	 * and M>N, then the constraint cannot be satisfied (and we don't have
+	 * to spend time on this branch that will eventually go wrong).
+	 * The N values are the union (OR) of the 16 masks of the unit, so only the units whose squares
+	 * changed since they were last checked are reduced.
+	 * @return false if some unit is inconsistent, true otherwise.
+	 * @post No unit will be pending to be checked.
+	 */
+	private boolean check_consistency()
+	{
+		long units = dirtyUnits;
+		dirtyUnits = 0;
+		while(units != 0)
 		{
-			// For each square of each unit (row, column and box) which the square belongs to...
-			for(int i=0; i<GRID_SIZE; ++i)
+			int u = Long.numberOfTrailingZeros(units);
+			units &= units - 1;
+			int union = 0;
+			if(strategy.vectorized)
+			{
+				union = unit_union(u);
+			}
+			else
 			{
-				int r = units[row][column][unit][i][0];
-				int c = units[row][column][unit][i][1];
-				if(values[r][c].contains(""+value))
+				for(int i=GRID_SIZE*u; i<GRID_SIZE*(u+1); ++i)
 				{
-					int[] s = new int[2];
-					s[0] = r;
-					s[1] = c;
-					toCheck.add(s);
+					union |= get_square(values, unitSquares[i]);
 				}
 			}
+			if(Integer.bitCount(union) < GRID_SIZE)
+			{
+				timesUsedHeuristic++;
+				return false;
+			}
 		}
-		
-		if(toCheck.size() == 0)
+		return true;
+	}
+	
+	/**
+	 * @brief Returns the positions of a unit whose squares have a value, reading the packed words (SWAR).
+	 * A row is 4 consecutive longs, and so is a box (one long of each of its 4 rows, as boxes are aligned to the
+	 * packing). A column is one lane of 16 longs. Shifting a word right by the value and masking the lanes leaves
+	 * the bit of each of its 4 squares at bits 0, 16, 32 and 48.
+	 * @param u Index of the unit (0-15 rows, 16-31 columns, 32-47 boxes).
+	 * @param value Value (0-15).
+	 * @return 16 bit mask of the positions of the unit (same order as unitSquares) that have the value.
+	 */
+	private int unit_hits(int u, int value)
+	{
+		if(u < GRID_SIZE || u >= 2*GRID_SIZE)
 		{
-			return null;
+			// Rows and boxes, the k-th word has the positions 4k to 4k+3
+			int word = u < GRID_SIZE ? 4*u : 16*((u - 2*GRID_SIZE) >> 2) + ((u - 2*GRID_SIZE) & 3);
+			int step = u < GRID_SIZE ? 1 : 4;
+			return compress_lanes((values[word] >>> value) & LANES)
+					| (compress_lanes((values[word + step] >>> value) & LANES) << 4)
+					| (compress_lanes((values[word + 2*step] >>> value) & LANES) << 8)
+					| (compress_lanes((values[word + 3*step] >>> value) & LANES) << 12);
 		}
-		else if(toCheck.size() == 1)
+		else
+		{
+			// Columns, the position is the row
+			int c = u - GRID_SIZE;
+			int shift = ((c & 3) << 4) + value;
+			int hits = 0;
+			for(int r=0; r<GRID_SIZE; ++r)
+			{
+				hits |= (int)((values[4*r + (c >> 2)] >>> shift) & 1) << r;
+			}
+			return hits;
+		}
+	}
+	
+	/**
+	 * @brief Returns the union of the masks of the squares of a unit, OR-reducing the packed words (SWAR).
+	 * @param u Index of the unit (0-15 rows, 16-31 columns, 32-47 boxes).
+	 * @return 16 bit mask with the values possible in some square of the unit.
+	 */
+	private int unit_union(int u)
+	{
+		long union;
+		if(u < GRID_SIZE)
+		{
+			union = values[4*u] | values[4*u + 1] | values[4*u + 2] | values[4*u + 3];
+		}
+		else if(u >= 2*GRID_SIZE)
 		{
-			return assign(values, toCheck.firstElement()[0], toCheck.firstElement()[1], value);
+			int word = 16*((u - 2*GRID_SIZE) >> 2) + ((u - 2*GRID_SIZE) & 3);
+			union = values[word] | values[word + 4] | values[word + 8] | values[word + 12];
 		}
 		else
 		{
-			// More than one option, no choice is made here, that's the backtracking search's responsibility.
-			return values;
+			// A column is a single lane, the other lanes are masked out before folding
+			int c = u - GRID_SIZE;
+			union = 0;
+			for(int r=0; r<GRID_SIZE; ++r)
+			{
+				union |= values[4*r + (c >> 2)];
+			}
+			union &= (long)ALL_VALUES << ((c & 3) << 4);
+		}
+		union |= union >>> 32;
+		union |= union >>> 16;
+		return (int)union & ALL_VALUES;
+	}
+	
+	/**
+	 * @brief Gathers the bits 0, 16, 32 and 48 of a long into the bits 0 to 3 of an int.
+	 * @param lanes Long with bits set only at the lowest bit of its lanes.
+	 * @return 4 bit mask.
+	 */
+	private int compress_lanes(long lanes)
+	{
+		return (int)((lanes | (lanes >>> 15) | (lanes >>> 30) | (lanes >>> 45)) & 0xF);
+	}
+	
+	/**
+	 * @brief Checks that every square has exactly one possible value, 4 squares at a time (SWAR).
+	 * (word - LANES) & ~word has the highest bit of a lane set only if some lane is zero (an empty square).
+	 * Without empty squares, subtracting 1 from each lane doesn't borrow between lanes, and a lane ANDed with
+	 * itself minus one is zero only if it has a single bit.
+	 * @return true if every square has only one possible value.
+	 */
+	private boolean all_single()
+	{
+		long bits = 0;
+		for(int w=0; w<NUM_WORDS; ++w)
+		{
+			long word = values[w];
+			if(((word - LANES) & ~word & (LANES << 15)) != 0)
+			{
+				return false;
+			}
+			bits |= word & (word - LANES);
 		}
+		return bits == 0;
 	}
 	
 	/**
@@ -555,7 +3101,7 @@ public class SudokuHex
 		{
 			for (int c=0; c<GRID_SIZE; ++c)
 			{
-				s += values[r][c];
+				s += square_to_string(get_square(values, GRID_SIZE*r + c));
 			}
 		}
 		return s;
@@ -574,7 +3120,7 @@ public class SudokuHex
 			for (Cols c : Cols.values())
 			{
 				System.out.print("\t"+r.toString()+c.toString()+"\t");
-				System.out.print(values[r.row()][c.column()]);
+				System.out.print(square_to_string(get_square(values, GRID_SIZE*r.row() + c.column())));
 			}
 			System.out.println("\n");
 		}
@@ -590,14 +3136,14 @@ public class SudokuHex
 			for (Cols c : Cols.values())
 			{
 				System.out.print("\t"+r.toString()+c.toString()+"\t");
-				System.out.print(values[r.row()][c.column()]);
+				System.out.print(square_to_string(get_square(values, GRID_SIZE*r.row() + c.column())));
 			}
 			System.out.println("\n");
 		}
 		System.out.println();
 	}
 	
-	protected void print_values(String[][] values)
+	protected void print_values(long[] values)
 	{
 		System.out.println();
 		if(values == null)
@@ -610,21 +3156,21 @@ public class SudokuHex
 			for (Cols c : Cols.values())
 			{
 				System.out.print("\t"+r.toString()+c.toString()+"\t");
-				System.out.print(values[r.row()][c.column()]);
+				System.out.print(square_to_string(get_square(values, GRID_SIZE*r.row() + c.column())));
 			}
 			System.out.println("\n");
 		}
 		System.out.println();
 	}
 	
-	protected void show_values(String[][] values, int row, int column)
+	protected void show_values(long[] values, int row, int column)
 	{
 		if(values == null)
 		{
 			System.out.println("null values returned");
 			return;
 		}
-		System.out.println("The possible values for ["+row+","+column+"] are "+values[row][column]);
+		System.out.println("The possible values for ["+row+","+column+"] are "+square_to_string(get_square(values, GRID_SIZE*row + column)));
 	}
 	
 	protected void print_grid()
@@ -656,15 +3202,30 @@ public class SudokuHex
 		{
 			return false;
 		}
+		if(strategy.vectorized)
+		{
+			// Every square has one value, and every unit has the 16 values (so they are all different).
+			if(!all_single())
+			{
+				return false;
+			}
+			for(int u=0; u<NUM_ALL_UNITS; ++u)
+			{
+				solved &= (unit_union(u) == ALL_VALUES);
+			}
+			return solved;
+		}
 		for (int r=0; r<GRID_SIZE; ++r)
 		{
 			for (int c=0; c<GRID_SIZE; ++c)
 			{
-				if(values[r][c].length() == 1)
+				int s = GRID_SIZE*r + c;
+				int square = get_square(values, s);
+				if(Integer.bitCount(square) == 1)
 				{
-					for(int peer=0; peer<NUM_PEERS; ++peer)
+					for(int peer=NUM_PEERS*s; peer<NUM_PEERS*(s+1); ++peer)
 					{
-						solved &= (values[r][c].charAt(0) != values[peers[r][c][peer][0]][peers[r][c][peer][1]].charAt(0));
+						solved &= (square != get_square(values, peers[peer]));
 					}
 				}
 				else
@@ -725,6 +3286,44 @@ public class SudokuHex
 		//System.out.println("The average number of backtracks per solving is: "+ averageBacktracks + " backtracks.");
 	}
 	
+	/**
+	 * @brief Solves the sudokus of a file racing the strategies of the default portfolio, and reports the winner of each one.
+	 * @param args File of sudokus (hard.txt by default).
+	 */
+	public static void main_portfolio(String[] args)
+	{
+		Strategy[] strategies = Strategy.portfolio();
+		ExecutorService executor = Executors.newFixedThreadPool(strategies.length);
+		try
+		{
+			FileInputStream in = new FileInputStream(args.length > 0 ? args[0] : "hard.txt");
+			BufferedReader br = new BufferedReader(new InputStreamReader(in));
+			String strLine;
+			while ((strLine = br.readLine()) != null)
+			{
+				System.out.println("\n"+strLine);
+				
+				long start = (new Date()).getTime();
+				SudokuHex s = solve_portfolio(strLine, strategies, executor);
+				long end = (new Date()).getTime();
+				
+				System.out.println(s.toString());
+				System.out.println("Is the sudoku solved? "+s.is_solved());
+				System.out.println("Winner: "+s.get_strategy().name);
+				System.out.println("Time: "+(end - start)+" miliseconds.");
+			}
+			br.close();
+		}
+		catch(Exception e)
+		{
+			System.out.println("Error reading file: exception " + e + " caught.");
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
 	public static void main(String[] args)
 	{
 		
@@ -741,6 +3340,7 @@ public class SudokuHex
 		System.out.println("\nSUDOKUHEX SOLVING TEST\n");
 		System.out.println("VERSION 2.3 Final\n");
 		System.out.println("Backtracking + Constraint Propagation + MRV + LCV\n");
+		Strategy strategy = new Strategy();
 		try
 		{
 			FileInputStream in = new FileInputStream("all.txt");
@@ -753,6 +3353,8 @@ public class SudokuHex
 			boolean allSolved = true;
 			//long sumBacktracks = 0;
 			//long averageBacktracks;
+			long sumConsistencyHeuristic = 0;
+			long sumNodes = 0;
 			while ((strLine = br.readLine()) != null)
 			{
 				System.out.println("\n"+strLine);
@@ -760,7 +3362,7 @@ public class SudokuHex
 				// Search benchmark
 				long start = (new Date()).getTime();
 				
-				SudokuHex s = new SudokuHex(strLine);
+				SudokuHex s = new SudokuHex(strLine, strategy);
 				s.solve();
 				
 				long end = (new Date()).getTime();
@@ -775,11 +3377,19 @@ public class SudokuHex
 				System.out.println("Is the sudoku solved? "+s.is_solved());
 				System.out.println("Time: "+time+" miliseconds.");
 				//System.out.println("Number of backtracks: " + s.numberBacktracks);
+				System.out.println("Number of nodes: " + s.get_number_nodes());
+				if(strategy.consistencyCheck)
+				{
+					System.out.println("Times used the consistency heuristic: " + s.get_times_used_heuristic());
+				}
+				s.print_statistics();
 				
 				++numSudokus;
 				sumTime += time;
 				allSolved &= s.is_solved();
 				//sumBacktracks += s.numberBacktracks;
+				sumConsistencyHeuristic += s.get_times_used_heuristic();
+				sumNodes += s.get_number_nodes();
 			}
 			averageTime = sumTime/numSudokus;
 			//averageBacktracks = sumBacktracks/numSudokus;
@@ -788,6 +3398,11 @@ public class SudokuHex
 			System.out.println(numSudokus + " solved in " + sumTime + "miliseconds.");
 			System.out.println("The average sudoku solving time is: "+averageTime + " miliseconds.");
 			//System.out.println("The average number of backtracks per solving is: "+ averageBacktracks + " backtracks.");
+			System.out.println("The average number of nodes per solving is: "+ sumNodes/numSudokus + " nodes.");
+			if(strategy.consistencyCheck)
+			{
+				System.out.println("The average number of times the consistency heuristic is used per solving is: "+ sumConsistencyHeuristic/numSudokus + " times.");
+			}
 		}
 		catch(Exception e)
 		{
@@ -0,0 +1,206 @@
+/**
+ * @file SudokuHexBatch.java
+ * @brief SudokuHex batch solving
+ *
+ * @version 2.3 final
+ *
+ * @section LICENSE
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details at
+ * http://www.gnu.org/copyleft/gpl.html
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * @brief Batch solving of a file of hexadecimal sudokus.
+ * The sudokus (one per line) are solved in parallel by a pool of workers, each one with its own solver, that
+ * is reused for all the sudokus it solves. The results are written in the same order as the sudokus.
+ */
+public class SudokuHexBatch
+{
+	/**
+	 * @brief Result of the solving of one sudoku.
+	 */
+	private static final class Result
+	{
+		private final String template; /**< Sudoku solved. */
+		private final String solution; /**< Solution, or the message of the sudokus without solution. */
+		private final boolean solved; /**< The solution was checked. */
+		private final long time; /**< Solving time, in nanoseconds. */
+
+		private Result(String template, String solution, boolean solved, long time)
+		{
+			this.template = template;
+			this.solution = solution;
+			this.solved = solved;
+			this.time = time;
+		}
+	}
+
+	private final SudokuHex.Strategy strategy; /**< Strategy of the solvers of the workers. */
+	private final SudokuHexOrderedPool<SudokuHex, Result> workers; /**< Pool of workers, each one with its own solver. */
+
+	/**
+	 * Constructor. Prepares the pool of workers.
+	 * @param strategy Heuristics and engine paths of the solvers.
+	 * @param numberWorkers Number of workers (threads).
+	 */
+	public SudokuHexBatch(SudokuHex.Strategy strategy, int numberWorkers)
+	{
+		this.strategy = strategy;
+		workers = new SudokuHexOrderedPool<SudokuHex, Result>(numberWorkers)
+		{
+			@Override
+			protected SudokuHex create_context()
+			{
+				return new SudokuHex(SudokuHexBatch.this.strategy);
+			}
+		};
+	}
+
+	/**
+	 * @brief Solves every sudoku read, and writes the results in the same order.
+	 * The results wait in a reorder buffer (a window of pending results, indexed by the number of the sudoku)
+	 * until the ones before them are written. When the window is full, the reading waits for the oldest one,
+	 * so the memory used doesn't depend on the number of sudokus.
+	 * @param in Reader of the sudokus, one per line.
+	 * @param out Stream where the results are written.
+	 * @throws Exception If the sudokus can't be read, or a worker fails.
+	 */
+	public void solve(BufferedReader in, PrintStream out) throws Exception
+	{
+		long numSudokus = 0;
+		long sumTime = 0;
+		boolean allSolved = true;
+		long start = System.nanoTime();
+
+		String strLine;
+		while ((strLine = in.readLine()) != null)
+		{
+			if(workers.is_full())
+			{
+				// The window is full, wait for the oldest result.
+				Result result = workers.take();
+				print_result(out, result);
+				sumTime += result.time;
+				allSolved &= result.solved;
+			}
+			final String template = strLine;
+			++numSudokus;
+			workers.submit(new SudokuHexOrderedPool.Task<SudokuHex, Result>()
+			{
+				@Override
+				public Result run(SudokuHex s)
+				{
+					long start = System.nanoTime();
+					s.load(template);
+					s.solve();
+					long time = System.nanoTime() - start;
+					return new Result(template, s.toString(), s.is_solved(), time);
+				}
+			});
+			// Write the results already finished, in order.
+			while(workers.is_next_done())
+			{
+				Result result = workers.take();
+				print_result(out, result);
+				sumTime += result.time;
+				allSolved &= result.solved;
+			}
+		}
+		while(workers.has_pending())
+		{
+			Result result = workers.take();
+			print_result(out, result);
+			sumTime += result.time;
+			allSolved &= result.solved;
+		}
+		long wallTime = System.nanoTime() - start;
+
+		out.println("\n\n");
+		out.println("All sudokus solved successfully: " + allSolved);
+		out.println(numSudokus + " solved in " + to_miliseconds(sumTime) + " miliseconds of solving time, " + to_miliseconds(wallTime) + " miliseconds of wall time with " + workers.get_number_workers() + " workers.");
+		if(numSudokus > 0)
+		{
+			out.println("The average sudoku solving time is: " + to_miliseconds(sumTime/numSudokus) + " miliseconds.");
+		}
+	}
+
+	/**
+	 * @brief Stops the workers, once the solving is finished.
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * @brief Writes the result of a sudoku, in the same format as the single thread benchmark.
+	 * @param out Stream where the result is written.
+	 * @param result Result of the sudoku.
+	 */
+	private static void print_result(PrintStream out, Result result)
+	{
+		out.println("\n" + result.template);
+		out.println(result.solution);
+		out.println("Is the sudoku solved? " + result.solved);
+		out.println("Time: " + to_miliseconds(result.time) + " miliseconds.");
+	}
+
+	/**
+	 * @brief Converts a time in nanoseconds to a text in miliseconds, with 3 decimals.
+	 * @param nanoseconds Time in nanoseconds.
+	 * @return Time in miliseconds.
+	 */
+	private static String to_miliseconds(long nanoseconds)
+	{
+		return String.format("%d.%03d", nanoseconds / 1000000, (nanoseconds / 1000) % 1000);
+	}
+
+	/**
+	 * @brief Solves a file of sudokus in parallel.
+	 * @param args Input file (all.txt by default), output file (benchmarkBatch.txt by default)
+	 * and number of workers (the number of processors by default).
+	 */
+	public static void main(String[] args)
+	{
+		String input = args.length > 0 ? args[0] : "all.txt";
+		String output = args.length > 1 ? args[1] : "benchmarkBatch.txt";
+		int numberWorkers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		SudokuHexBatch batch = new SudokuHexBatch(new SudokuHex.Strategy(), numberWorkers);
+		try
+		{
+			PrintStream out = new PrintStream(new FileOutputStream(output));
+			out.println("\nSUDOKUHEX BATCH SOLVING TEST\n");
+			out.println("VERSION 2.3 Final\n");
+			out.println("Backtracking + Constraint Propagation + MRV + LCV\n");
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input)));
+			batch.solve(br, out);
+			br.close();
+			out.close();
+		}
+		catch(Exception e)
+		{
+			System.out.println("Error solving file: exception " + e + " caught.");
+		}
+		finally
+		{
+			batch.shutdown();
+		}
+	}
+}
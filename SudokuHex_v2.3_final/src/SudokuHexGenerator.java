@@ -0,0 +1,207 @@
+/**
+ * @file SudokuHexGenerator.java
+ * @brief SudokuHex puzzle generator
+ *
+ * @version 2.3 final
+ *
+ * @section LICENSE
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details at
+ * http://www.gnu.org/copyleft/gpl.html
+ *
+ */
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * @brief Generator of hexadecimal sudokus with a unique solution.
+ * Each sudoku starts as a random full grid (solving the empty grid with random tie-breaking), and its squares
+ * are emptied in random order, keeping each hole only if the solution is still unique, until the target
+ * number of clues is reached. The sudokus are generated in parallel by a pool of workers, and written in
+ * the format of the sudoku files (one per line, with . for the free squares). The sudoku i only depends on
+ * the seed and on i, so the same seed gives the same file with any number of workers.
+ */
+public class SudokuHexGenerator
+{
+	private static final int NUM_SQUARES = 256; /**< Number of squares of a grid. */
+	private static final String EMPTY_GRID = new String(new char[NUM_SQUARES]).replace('\0', '.'); /**< Template without any value. */
+
+	/**
+	 * @brief Solvers and buffers of a worker, reused for all the sudokus it generates.
+	 */
+	private static final class Worker
+	{
+		private final SudokuHex.Strategy gridStrategy; /**< Strategy of the full grids, with random tie-breaking (its seed changes with each sudoku). */
+		private final SudokuHex grids; /**< Solver of the full grids. */
+		private final SudokuHex checker; /**< Solver of the uniqueness checks. */
+		private final int[] order = new int[NUM_SQUARES]; /**< Order in which the squares are emptied. */
+
+		private Worker(SudokuHex.Strategy strategy)
+		{
+			gridStrategy = strategy.copy();
+			gridStrategy.restarts = true;
+			grids = new SudokuHex(gridStrategy);
+			checker = new SudokuHex(strategy);
+		}
+	}
+
+	private final SudokuHex.Strategy strategy; /**< Strategy of the uniqueness checks. */
+	private final int targetClues; /**< Number of clues to reach, if the solution is still unique. */
+	private final long seed; /**< Seed of the generation. */
+	private final SudokuHexOrderedPool<Worker, String> workers; /**< Pool of workers, each one with its own solvers. */
+
+	/**
+	 * Constructor. Prepares the pool of workers.
+	 * @param strategy Strategy of the uniqueness checks (the full grids use it with random tie-breaking).
+	 * @param targetClues Number of clues to reach.
+	 * @param seed Seed of the generation.
+	 * @param numberWorkers Number of workers (threads).
+	 */
+	public SudokuHexGenerator(SudokuHex.Strategy strategy, int targetClues, long seed, int numberWorkers)
+	{
+		this.strategy = strategy;
+		this.targetClues = targetClues;
+		this.seed = seed;
+		workers = new SudokuHexOrderedPool<Worker, String>(numberWorkers)
+		{
+			@Override
+			protected Worker create_context()
+			{
+				return new Worker(SudokuHexGenerator.this.strategy);
+			}
+		};
+	}
+
+	/**
+	 * @brief Generates a sudoku with the solvers of a worker.
+	 * @param worker Solvers and buffers of the worker.
+	 * @param index Number of the sudoku, it sets its seed.
+	 * @return Template of the sudoku. It has more clues than the target if no more squares could be emptied.
+	 */
+	private String generate(Worker worker, long index)
+	{
+		long puzzleSeed = seed*0x9E3779B97F4A7C15L + index;
+		Random random = new Random(puzzleSeed);
+
+		// Random full grid.
+		worker.gridStrategy.seed = puzzleSeed;
+		worker.grids.load(EMPTY_GRID);
+		worker.grids.solve();
+		char[] puzzle = worker.grids.toString().toCharArray();
+
+		// Random order of the squares (Fisher-Yates shuffle).
+		for(int i=0; i<NUM_SQUARES; ++i)
+		{
+			worker.order[i] = i;
+		}
+		for(int i=NUM_SQUARES-1; i>0; --i)
+		{
+			int j = random.nextInt(i + 1);
+			int temp = worker.order[i];
+			worker.order[i] = worker.order[j];
+			worker.order[j] = temp;
+		}
+
+		// Empty the squares while the solution is unique.
+		int clues = NUM_SQUARES;
+		for(int i=0; i<NUM_SQUARES && clues>targetClues; ++i)
+		{
+			int s = worker.order[i];
+			char value = puzzle[s];
+			puzzle[s] = '.';
+			worker.checker.load(new String(puzzle));
+			if(worker.checker.has_unique_solution())
+			{
+				--clues;
+			}
+			else
+			{
+				puzzle[s] = value;
+			}
+		}
+		return new String(puzzle);
+	}
+
+	/**
+	 * @brief Generates sudokus and writes them in order, one per line.
+	 * The sudokus wait in a reorder buffer (a window of pending sudokus, indexed by their number) until the
+	 * ones before them are written. When the window is full, the generation waits for the oldest one.
+	 * @param numberSudokus Number of sudokus to generate.
+	 * @param out Stream where the sudokus are written.
+	 * @throws Exception If a worker fails.
+	 */
+	public void generate(long numberSudokus, PrintStream out) throws Exception
+	{
+		long submitted = 0;
+		long written = 0;
+		while(written < numberSudokus)
+		{
+			while(submitted < numberSudokus && !workers.is_full())
+			{
+				final long index = submitted++;
+				workers.submit(new SudokuHexOrderedPool.Task<Worker, String>()
+				{
+					@Override
+					public String run(Worker worker)
+					{
+						return generate(worker, index);
+					}
+				});
+			}
+			out.println(workers.take());
+			++written;
+		}
+		out.flush();
+	}
+
+	/**
+	 * @brief Stops the workers, once the generation is finished.
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * @brief Generates a file of sudokus in parallel.
+	 * @param args Output file (generated.txt by default), number of sudokus (1000 by default),
+	 * target number of clues (120 by default), seed (1 by default) and number of workers (the number of processors by default).
+	 */
+	public static void main(String[] args)
+	{
+		String output = args.length > 0 ? args[0] : "generated.txt";
+		long numberSudokus = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		int targetClues = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+		int numberWorkers = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		SudokuHexGenerator generator = new SudokuHexGenerator(new SudokuHex.Strategy(), targetClues, seed, numberWorkers);
+		try
+		{
+			PrintStream out = new PrintStream(new FileOutputStream(output));
+			long start = System.nanoTime();
+			generator.generate(numberSudokus, out);
+			long time = (System.nanoTime() - start) / 1000000;
+			out.close();
+			System.out.println(numberSudokus + " sudokus generated in " + time + " miliseconds with " + numberWorkers + " workers.");
+		}
+		catch(Exception e)
+		{
+			System.out.println("Error generating file: exception " + e + " caught.");
+		}
+		finally
+		{
+			generator.shutdown();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * @file SudokuHexHedger.java
+ * @brief SudokuHex hedged solving
+ *
+ * @version 2.3 final
+ *
+ * @section LICENSE
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details at
+ * http://www.gnu.org/copyleft/gpl.html
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @brief Hedged solving of hexadecimal sudokus.
+ * Each sudoku is solved with the primary strategy, and if it isn't solved within the latency budget, a second
+ * search with the hedge strategy is started in another thread. The first one to finish wins, the other one is
+ * cancelled. The budget is a percentile of the latencies of the recent sudokus, so the extra work is only
+ * spent on the slowest ones.
+ */
+public class SudokuHexHedger
+{
+	private final SudokuHex.Strategy primary; /**< Strategy of the first search. */
+	private final SudokuHex.Strategy hedge; /**< Strategy of the second search, started when the budget runs out. */
+	private final ExecutorService executor; /**< Executor where the searches run, it needs 2 threads per concurrent sudoku. */
+	private final double percentile; /**< Percentile (0-1) of the recent latencies used as the budget. */
+	private final long initialBudget; /**< Budget (in nanoseconds) until there are enough latencies to compute the percentile. */
+	private final long[] latencies; /**< Latencies (in nanoseconds) of the recent sudokus, a circular buffer. */
+	private long numberLatencies; /**< Number of latencies recorded. */
+	private long numberHedges; /**< Number of sudokus that needed the second search. */
+	private long hedgeWins; /**< Number of sudokus where the second search finished first. */
+
+	/**
+	 * Constructor. Hedges with a different seed and heuristic: the primary strategy with dom/wdeg and restarts.
+	 * The budget is the 95th percentile of the last 100 latencies (10 miliseconds until there are 20).
+	 * @param primary Strategy of the first search.
+	 * @param executor Executor where the searches run, it needs 2 threads per concurrent sudoku.
+	 */
+	public SudokuHexHedger(SudokuHex.Strategy primary, ExecutorService executor)
+	{
+		this(primary, default_hedge(primary), executor, 0.95, 100, TimeUnit.MILLISECONDS.toNanos(10));
+	}
+
+	/**
+	 * Constructor.
+	 * @param primary Strategy of the first search.
+	 * @param hedge Strategy of the second search.
+	 * @param executor Executor where the searches run, it needs 2 threads per concurrent sudoku.
+	 * @param percentile Percentile (0-1) of the recent latencies used as the budget.
+	 * @param window Number of recent latencies kept.
+	 * @param initialBudget Budget (in nanoseconds) until a fifth of the window is filled.
+	 */
+	public SudokuHexHedger(SudokuHex.Strategy primary, SudokuHex.Strategy hedge, ExecutorService executor, double percentile, int window, long initialBudget)
+	{
+		this.primary = primary;
+		this.hedge = hedge;
+		this.executor = executor;
+		this.percentile = percentile;
+		this.initialBudget = initialBudget;
+		latencies = new long[window];
+	}
+
+	/**
+	 * @brief Returns the default hedge of a strategy, the same one with dom/wdeg, restarts and another seed.
+	 * @param primary Strategy of the first search.
+	 * @return Strategy of the second search.
+	 */
+	private static SudokuHex.Strategy default_hedge(SudokuHex.Strategy primary)
+	{
+		SudokuHex.Strategy hedge = primary.copy();
+		hedge.name = primary.name + " (hedge)";
+		hedge.weightedDegree = true;
+		hedge.restarts = true;
+		hedge.seed = primary.seed + 1;
+		return hedge;
+	}
+
+	/**
+	 * @brief Solves a sudoku, hedging it if it takes longer than the budget.
+	 * @param template String that represents a hexadecimal sudoku.
+	 * @return Solver that finished first (its values are the solution, or null if there isn't any),
+	 * its strategy tells if it was the hedge. Null if the searches failed with an exception.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the searches.
+	 */
+	public SudokuHex solve(String template) throws InterruptedException
+	{
+		long start = System.nanoTime();
+		final AtomicReference<SudokuHex> winner = new AtomicReference<SudokuHex>();
+		final SudokuHex first = new SudokuHex(template, primary);
+		CompletionService<Void> finished = new ExecutorCompletionService<Void>(executor);
+		finished.submit(race(first, winner));
+
+		if(finished.poll(budget(), TimeUnit.NANOSECONDS) == null && winner.get() == null)
+		{
+			// Too slow, start the hedge. If the first search finishes meanwhile, the hedge won't start searching.
+			SudokuHex second = new SudokuHex(template, hedge);
+			finished.submit(race(second, winner));
+			finished.take();
+			if(winner.get() == null)
+			{
+				finished.take();
+			}
+			// The search that lost stops at its next node.
+			if(winner.get() != first)
+			{
+				first.cancel();
+			}
+			if(winner.get() != second)
+			{
+				second.cancel();
+			}
+			synchronized(this)
+			{
+				++numberHedges;
+				if(winner.get() == second)
+				{
+					++hedgeWins;
+				}
+			}
+		}
+		record(System.nanoTime() - start);
+		return winner.get();
+	}
+
+	/**
+	 * @brief Returns the task that runs a search of the race.
+	 * @param solver Solver of the search.
+	 * @param winner Solver that finished first.
+	 * @return Task that runs the search.
+	 */
+	private Callable<Void> race(final SudokuHex solver, final AtomicReference<SudokuHex> winner)
+	{
+		return new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				if(winner.get() != null)
+				{
+					return null;
+				}
+				solver.solve();
+				if(!solver.is_cancelled())
+				{
+					winner.compareAndSet(null, solver);
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * @brief Returns the current budget, the percentile of the recent latencies.
+	 * @return Budget in nanoseconds.
+	 */
+	private synchronized long budget()
+	{
+		int size = (int)Math.min(numberLatencies, latencies.length);
+		if(size < Math.max(1, latencies.length/5))
+		{
+			return initialBudget;
+		}
+		long[] sorted = Arrays.copyOf(latencies, size);
+		Arrays.sort(sorted);
+		return sorted[Math.min(size - 1, (int)(percentile*size))];
+	}
+
+	/**
+	 * @brief Records the latency of a sudoku.
+	 * @param latency Latency in nanoseconds.
+	 */
+	private synchronized void record(long latency)
+	{
+		latencies[(int)(numberLatencies++ % latencies.length)] = latency;
+	}
+
+	/**
+	 * @brief Returns the number of sudokus that needed the second search.
+	 * @return Number of hedged sudokus.
+	 */
+	public synchronized long get_hedges()
+	{
+		return numberHedges;
+	}
+
+	/**
+	 * @brief Returns the number of sudokus where the second search finished first.
+	 * @return Number of sudokus won by the hedge.
+	 */
+	public synchronized long get_hedge_wins()
+	{
+		return hedgeWins;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * @file SudokuHexOrderedPool.java
+ * @brief SudokuHex pool of workers with ordered results
+ *
+ * @version 2.3 final
+ *
+ * @section LICENSE
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details at
+ * http://www.gnu.org/copyleft/gpl.html
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @brief Pool of workers whose results are taken in the same order as their tasks were submitted.
+ * Each worker has its own context (solvers, buffers...), created the first time it runs a task and reused for
+ * all the next ones. The results wait in a reorder buffer (a window of pending results, indexed by the number
+ * of the task) until the ones before them are taken. The window has a fixed size, so the memory used doesn't
+ * depend on the number of tasks. The tasks are submitted and the results taken by a single thread.
+ * @param <C> Context of a worker.
+ * @param <T> Result of a task.
+ */
+public abstract class SudokuHexOrderedPool<C, T>
+{
+	private static final int WINDOW_PER_WORKER = 64; /**< Results that can be waiting to be taken per worker, before the window is full. */
+
+	/**
+	 * @brief Task run by a worker with its context.
+	 * @param <C> Context of a worker.
+	 * @param <T> Result of the task.
+	 */
+	public interface Task<C, T>
+	{
+		/**
+		 * @brief Runs the task.
+		 * @param context Context of the worker that runs it.
+		 * @return Result of the task.
+		 */
+		T run(C context);
+	}
+
+	private final ExecutorService workers; /**< Pool of workers. */
+	private final int numberWorkers; /**< Number of workers. */
+	private final List<Future<T>> window; /**< Pending results, a circular buffer indexed by the number of the task. */
+	private long submitted; /**< Number of tasks submitted. */
+	private long taken; /**< Number of results taken. */
+	/** Context of each worker, created the first time the worker runs a task. */
+	private final ThreadLocal<C> contexts = new ThreadLocal<C>()
+	{
+		@Override
+		protected C initialValue()
+		{
+			return create_context();
+		}
+	};
+
+	/**
+	 * Constructor. Prepares the pool of workers.
+	 * @param numberWorkers Number of workers (threads).
+	 */
+	public SudokuHexOrderedPool(int numberWorkers)
+	{
+		this.numberWorkers = numberWorkers;
+		workers = Executors.newFixedThreadPool(numberWorkers);
+		window = new ArrayList<Future<T>>(Collections.<Future<T>>nCopies(WINDOW_PER_WORKER*numberWorkers, null));
+	}
+
+	/**
+	 * @brief Creates the context of a worker, called by the worker before its first task.
+	 * @return Context of the worker.
+	 */
+	protected abstract C create_context();
+
+	/**
+	 * @brief Returns the number of workers.
+	 * @return Number of workers.
+	 */
+	public int get_number_workers()
+	{
+		return numberWorkers;
+	}
+
+	/**
+	 * @brief Checks if the window is full, so the oldest result must be taken before submitting another task.
+	 * @return true if the window is full, false otherwise.
+	 */
+	public boolean is_full()
+	{
+		return submitted - taken == window.size();
+	}
+
+	/**
+	 * @brief Checks if there are results not taken yet.
+	 * @return true if some task was submitted and its result not taken, false otherwise.
+	 */
+	public boolean has_pending()
+	{
+		return taken < submitted;
+	}
+
+	/**
+	 * @brief Checks if the oldest result not taken yet is finished, so taking it won't wait.
+	 * @return true if there is a pending result and it's finished, false otherwise.
+	 */
+	public boolean is_next_done()
+	{
+		return has_pending() && window.get((int)(taken % window.size())).isDone();
+	}
+
+	/**
+	 * @brief Submits a task to the workers.
+	 * @param task Task to run.
+	 * @pre The window isn't full.
+	 */
+	public void submit(final Task<C, T> task)
+	{
+		window.set((int)(submitted++ % window.size()), workers.submit(new Callable<T>()
+		{
+			@Override
+			public T call()
+			{
+				return task.run(contexts.get());
+			}
+		}));
+	}
+
+	/**
+	 * @brief Takes the oldest result not taken yet, waiting until it's finished.
+	 * @return Result of the task.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 * @throws ExecutionException If the task failed.
+	 * @pre There is a pending result.
+	 */
+	public T take() throws InterruptedException, ExecutionException
+	{
+		int index = (int)(taken++ % window.size());
+		T result = window.get(index).get();
+		window.set(index, null);
+		return result;
+	}
+
+	/**
+	 * @brief Stops the workers, once all the tasks are finished.
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+}